@@ -0,0 +1,80 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.benchmarks;
+
+import de.schipplock.apps.stromzettel.analytics.AggregationPeriod;
+import de.schipplock.apps.stromzettel.analytics.ConsumptionSeries;
+import de.schipplock.apps.stromzettel.analytics.PeriodAggregate;
+import de.schipplock.apps.stromzettel.analytics.PriceSchedule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class AnalyticsBenchmark {
+
+    @Param({ "1000", "100000", "1000000" })
+    public int readings;
+
+    // one tariff per half year over the whole history
+    @Param({ "1", "60" })
+    public int tariffs;
+
+    private ConsumptionSeries series;
+
+    private PriceSchedule prices;
+
+    @Setup
+    public void createSeries() {
+        series = SyntheticData.series(readings, 1);
+        prices = SyntheticData.schedule(tariffs, 2);
+    }
+
+    @Benchmark
+    public PeriodAggregate aggregateMonthly() {
+        return series.aggregate(AggregationPeriod.MONTH, prices);
+    }
+
+    @Benchmark
+    public double costs() {
+        return series.getCosts(series.getEpochSecond(0), series.getEpochSecond(series.size() - 1) + 1, prices);
+    }
+
+    // every interval looks its tariff up on its own, what the cursor saves
+    @Benchmark
+    public double costsWithoutCursor() {
+        double costs = 0;
+        for (int i = 1; i < series.size(); i++) {
+            costs += prices.costs(series.getEpochSecond(i - 1), series.getEpochSecond(i), series.getDelta(i));
+        }
+        return costs;
+    }
+}
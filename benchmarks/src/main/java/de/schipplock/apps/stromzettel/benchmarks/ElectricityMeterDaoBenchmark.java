@@ -0,0 +1,54 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.benchmarks;
+
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// findAll goes through the query cache like in the application; merge renames the meter with the big history, which
+// must not cost more than renaming one without readings
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ElectricityMeterDaoBenchmark {
+
+    private long renames;
+
+    @Benchmark
+    public List<ElectricityMeter> findAll(SeededDatabase seeded) {
+        return seeded.meterDAO.findAll();
+    }
+
+    @Benchmark
+    public ElectricityMeter merge(SeededDatabase seeded) {
+        seeded.meter.setName("meter " + (renames++ % 2 == 0 ? "a" : "b"));
+        return seeded.meterDAO.merge(seeded.meter);
+    }
+}
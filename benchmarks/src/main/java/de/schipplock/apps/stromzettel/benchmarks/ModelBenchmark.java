@@ -0,0 +1,90 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.benchmarks;
+
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import de.schipplock.apps.stromzettel.model.Reading;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ModelBenchmark {
+
+    // a power of two, so picking the next one is a mask
+    private static final int LOOKUPS = 1024;
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int readings;
+
+    private ElectricityMeter meter;
+
+    private Reading[] lookups;
+
+    private int next;
+
+    @Setup
+    public void createMeter() {
+        meter = SyntheticData.meter("meter", readings, 1);
+        var random = new Random(2);
+        var all = new ArrayList<>(meter.getReadings());
+        lookups = new Reading[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookups[i] = all.get(random.nextInt(readings));
+        }
+        // builds the date index outside of the measurement
+        meter.getPreviousReading(lookups[0]);
+    }
+
+    @Benchmark
+    public Reading getPreviousReading() {
+        return meter.getPreviousReading(lookups[next++ & (LOOKUPS - 1)]);
+    }
+
+    // what deleting a reading costs the meter, put back right away so every call sees the same history
+    @Benchmark
+    public Reading removeReading() {
+        var reading = lookups[next++ & (LOOKUPS - 1)];
+        meter.removeReading(reading);
+        meter.addReading(reading);
+        return reading;
+    }
+
+    // the first lookup after the readings were replaced, which has to build the date index again
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Reading getPreviousReadingAfterSetReadings() {
+        meter.setReadings(meter.getReadings());
+        return meter.getPreviousReading(lookups[next++ & (LOOKUPS - 1)]);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.benchmarks;
+
+import de.schipplock.apps.stromzettel.analytics.ConsumptionSeries;
+import de.schipplock.apps.stromzettel.analytics.PortfolioReport;
+import de.schipplock.apps.stromzettel.analytics.PortfolioReporter;
+import de.schipplock.apps.stromzettel.analytics.PriceSchedule;
+import de.schipplock.apps.stromzettel.dao.PriceSchedules;
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// a report over every seeded meter and the whole history
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class PortfolioBenchmark {
+
+    private static final LocalDateTime FROM = SyntheticData.START;
+
+    private static final LocalDateTime TO = SyntheticData.START.plusYears(100);
+
+    private final PortfolioReporter reporter = new PortfolioReporter();
+
+    private Map<Long, ConsumptionSeries> series;
+
+    private Map<Long, PriceSchedule> prices;
+
+    @Setup
+    public void loadSeries(SeededDatabase seeded) {
+        series = seeded.readingDAO.loadAllSeries(FROM, TO);
+        prices = seeded.database.read(em -> em.unwrap(Session.class).doReturningWork(PriceSchedules::loadAll));
+    }
+
+    @Benchmark
+    public Map<Long, ConsumptionSeries> loadAllSeries(SeededDatabase seeded) {
+        return seeded.readingDAO.loadAllSeries(FROM, TO);
+    }
+
+    @Benchmark
+    public PortfolioReport report(SeededDatabase seeded) {
+        return reporter.report(seeded.meters, series, prices, ConsumptionSeries.toEpochSecond(FROM), ConsumptionSeries.toEpochSecond(TO));
+    }
+
+    @Benchmark
+    public PortfolioReport reportSequentially(SeededDatabase seeded) {
+        return reporter.reportSequentially(seeded.meters, series, prices, ConsumptionSeries.toEpochSecond(FROM), ConsumptionSeries.toEpochSecond(TO));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.benchmarks;
+
+import de.schipplock.apps.stromzettel.analytics.ConsumptionSeries;
+import de.schipplock.apps.stromzettel.dao.ReadingFilter;
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import de.schipplock.apps.stromzettel.model.Reading;
+import de.schipplock.apps.stromzettel.tree.LazyMeterTreeModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ReadingDaoBenchmark {
+
+    // readings the persist benchmark added, removed again after every iteration so each one starts from the seeded history
+    @State(Scope.Benchmark)
+    public static class Inserts {
+
+        private final List<Reading> inserted = new ArrayList<>();
+
+        private Reading latest;
+
+        @Setup(Level.Iteration)
+        public void findLatest(SeededDatabase seeded) {
+            latest = seeded.readingDAO.findPage(seeded.meter, null, 1).get(0);
+        }
+
+        Reading next(ElectricityMeter meter) {
+            var reading = new Reading(latest.getReadingValue() + 1, latest.getReadingDate().plusMinutes(15));
+            reading.setElectricityMeter(meter);
+            latest = reading;
+            inserted.add(reading);
+            return reading;
+        }
+
+        @TearDown(Level.Iteration)
+        public void deleteInserted(SeededDatabase seeded) {
+            inserted.forEach(seeded.readingDAO::delete);
+            inserted.clear();
+        }
+    }
+
+    // bounds relative to the newest reading, so they hit the history of every size: a few hours, a handful of values
+    // and a value range that lets nearly everything through
+    @State(Scope.Benchmark)
+    public static class Filters {
+
+        private ReadingFilter hours;
+
+        private ReadingFilter fewValues;
+
+        private ReadingFilter mostValues;
+
+        @Setup(Level.Trial)
+        public void pickBounds(SeededDatabase seeded) {
+            var latest = seeded.readingDAO.findPage(seeded.meter, null, 1).get(0);
+            hours = new ReadingFilter(latest.getReadingDate().minusHours(12), latest.getReadingDate().minusHours(6), null, null);
+            fewValues = new ReadingFilter(null, null, latest.getReadingValue() - 50, latest.getReadingValue() - 40);
+            mostValues = new ReadingFilter(null, null, 10_001L, null);
+        }
+    }
+
+    // a new reading is a single row insert plus the rollup update, no matter how long the history is
+    @Benchmark
+    public Reading persist(SeededDatabase seeded, Inserts inserts) {
+        return seeded.readingDAO.persist(inserts.next(seeded.meter));
+    }
+
+    // what the tree asks for when a meter gets expanded
+    @Benchmark
+    public List<Reading> findFirstPage(SeededDatabase seeded) {
+        return seeded.readingDAO.findPage(seeded.meter, null, LazyMeterTreeModel.PAGE_SIZE + 1);
+    }
+
+    // the first page the tree shows while the filter bar is in use
+    @Benchmark
+    public List<Reading> findFirstPageInDateRange(SeededDatabase seeded, Filters filters) {
+        return seeded.readingDAO.findPage(seeded.meter, null, LazyMeterTreeModel.PAGE_SIZE + 1, filters.hours);
+    }
+
+    @Benchmark
+    public List<Reading> findFirstPageInNarrowValueRange(SeededDatabase seeded, Filters filters) {
+        return seeded.readingDAO.findPage(seeded.meter, null, LazyMeterTreeModel.PAGE_SIZE + 1, filters.fewValues);
+    }
+
+    @Benchmark
+    public List<Reading> findFirstPageInWideValueRange(SeededDatabase seeded, Filters filters) {
+        return seeded.readingDAO.findPage(seeded.meter, null, LazyMeterTreeModel.PAGE_SIZE + 1, filters.mostValues);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ConsumptionSeries loadSeries(SeededDatabase seeded) {
+        return seeded.readingDAO.loadSeries(seeded.meter);
+    }
+
+    // the way a series was built before the projection query, by loading the whole object graph of the meter
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ConsumptionSeries loadSeriesFromEntities(SeededDatabase seeded) {
+        return seeded.database.read(em -> ConsumptionSeries.of(em.find(ElectricityMeter.class, seeded.meter.getId()).getReadings()));
+    }
+}
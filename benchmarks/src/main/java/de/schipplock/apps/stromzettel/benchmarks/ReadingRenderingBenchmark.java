@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.benchmarks;
+
+import de.schipplock.apps.stromzettel.tree.MeterTreeCellRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.*;
+import javax.swing.tree.DefaultMutableTreeNode;
+import java.awt.*;
+import java.util.concurrent.TimeUnit;
+
+// what painting one reading row costs, headless so it runs on a build server as well
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ReadingRenderingBenchmark {
+
+    private static final int ROWS = 1024;
+
+    private JTree tree;
+
+    private MeterTreeCellRenderer renderer;
+
+    private DefaultMutableTreeNode[] rows;
+
+    private int next;
+
+    @Setup
+    public void createRows() {
+        tree = new JTree();
+        renderer = new MeterTreeCellRenderer();
+        rows = SyntheticData.readings(ROWS, 1).stream()
+                .map(reading -> new DefaultMutableTreeNode(reading, false))
+                .toArray(DefaultMutableTreeNode[]::new);
+    }
+
+    // type-ahead and logging still go through toString
+    @Benchmark
+    public String readingToString() {
+        return rows[next++ & (ROWS - 1)].getUserObject().toString();
+    }
+
+    @Benchmark
+    public Component getTreeCellRendererComponent() {
+        return renderer.getTreeCellRendererComponent(tree, rows[next++ & (ROWS - 1)], false, false, true, 0, false);
+    }
+
+    // JTree measures every row it lays out
+    @Benchmark
+    public Dimension getPreferredSize() {
+        return renderer.getTreeCellRendererComponent(tree, rows[next++ & (ROWS - 1)], false, false, true, 0, false).getPreferredSize();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.benchmarks;
+
+import de.schipplock.apps.stromzettel.dao.Database;
+import de.schipplock.apps.stromzettel.dao.ElectricityMeterDAO;
+import de.schipplock.apps.stromzettel.dao.ReadingDAO;
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+// an embedded Derby database per history size with one meter that has the given number of readings and a few small
+// ones next to it; seeding a million readings takes a while, so the databases are kept and reused by later runs
+@State(Scope.Benchmark)
+public class SeededDatabase {
+
+    static final int SMALL_METERS = 9;
+
+    static final int SMALL_METER_READINGS = 1000;
+
+    // readings per persistAll call, so the transaction log stays small while seeding
+    private static final int SEED_CHUNK = 10_000;
+
+    @Param({ "100", "1000", "100000", "1000000" })
+    public int readings;
+
+    Database database;
+
+    ElectricityMeterDAO meterDAO;
+
+    ReadingDAO readingDAO;
+
+    List<ElectricityMeter> meters;
+
+    // the one with the big history
+    ElectricityMeter meter;
+
+    @Setup(Level.Trial)
+    public void open() {
+        var directory = Path.of(System.getProperty("stromzettel.benchmarks.dir", "target/benchmark-db"), "readings-" + readings).toAbsolutePath();
+        database = new Database(Map.of("jakarta.persistence.jdbc.url", format("jdbc:derby:%s;create=true", directory)));
+        meterDAO = new ElectricityMeterDAO(database);
+        readingDAO = new ReadingDAO(database);
+        meters = meterDAO.findAll();
+        if (meters.isEmpty()) {
+            seed();
+            meters = meterDAO.findAll();
+        }
+        if (meters.size() != SMALL_METERS + 1) {
+            throw new IllegalStateException(format("%s was not seeded completely, delete it and run again", directory));
+        }
+        meter = meters.stream().min(Comparator.comparing(ElectricityMeter::getId)).orElseThrow();
+    }
+
+    private void seed() {
+        seedMeter("meter", readings, 1);
+        for (int i = 1; i <= SMALL_METERS; i++) {
+            seedMeter("meter " + i, SMALL_METER_READINGS, i + 1);
+        }
+    }
+
+    private void seedMeter(String name, int count, long seed) {
+        var seededMeter = meterDAO.merge(new ElectricityMeter(name, 30));
+        var seededReadings = SyntheticData.readings(count, seed);
+        for (int from = 0; from < count; from += SEED_CHUNK) {
+            var chunk = seededReadings.subList(from, Math.min(from + SEED_CHUNK, count));
+            chunk.forEach(reading -> reading.setElectricityMeter(seededMeter));
+            readingDAO.persistAll(chunk);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        database.close();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.benchmarks;
+
+import de.schipplock.apps.stromzettel.analytics.ConsumptionSeries;
+import de.schipplock.apps.stromzettel.analytics.PriceSchedule;
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import de.schipplock.apps.stromzettel.model.Reading;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// the same seed always gives the same history, so runs on different commits measure the same data
+final class SyntheticData {
+
+    static final LocalDateTime START = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    // a smart meter reading every quarter of an hour, a million of them cover about 28 years
+    private static final int MINUTES_BETWEEN_READINGS = 15;
+
+    private SyntheticData() {}
+
+    static List<Reading> readings(int count, long seed) {
+        var random = new Random(seed);
+        List<Reading> readings = new ArrayList<>(count);
+        var readingDate = START;
+        long readingValue = 10_000;
+        for (int i = 0; i < count; i++) {
+            readingDate = readingDate.plusMinutes(MINUTES_BETWEEN_READINGS).withSecond(random.nextInt(60));
+            readingValue += random.nextInt(3);
+            readings.add(new Reading(readingValue, readingDate));
+        }
+        return readings;
+    }
+
+    // never persisted, the ids are only there because a meter keeps its readings by id
+    static ElectricityMeter meter(String name, int readings, long seed) {
+        var meter = new ElectricityMeter(name, 30);
+        long id = 1;
+        for (var reading : readings(readings, seed)) {
+            reading.setId(id++);
+            reading.setElectricityMeter(meter);
+            meter.addReading(reading);
+        }
+        return meter;
+    }
+
+    static ConsumptionSeries series(int readings, long seed) {
+        var builder = new ConsumptionSeries.Builder(readings);
+        for (var reading : readings(readings, seed)) {
+            builder.add(ConsumptionSeries.toEpochSecond(reading.getReadingDate()), reading.getReadingValue());
+        }
+        return builder.build();
+    }
+
+    // a price change every half year, every other one with a night tariff from 22:00 to 06:00
+    static PriceSchedule schedule(int tariffs, long seed) {
+        var random = new Random(seed);
+        var builder = new PriceSchedule.Builder(tariffs);
+        for (int i = 0; i < tariffs; i++) {
+            long validFrom = ConsumptionSeries.toEpochSecond(START.plusMonths(6L * i));
+            double kwhPrice = 25 + random.nextInt(20);
+            if (i % 2 == 0) {
+                builder.add(validFrom, kwhPrice);
+            } else {
+                builder.add(validFrom, kwhPrice, 22 * 3600, 6 * 3600, kwhPrice * 0.6);
+            }
+        }
+        return builder.build();
+    }
+}
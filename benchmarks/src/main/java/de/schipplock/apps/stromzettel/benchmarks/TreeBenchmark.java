@@ -0,0 +1,85 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.benchmarks;
+
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import de.schipplock.apps.stromzettel.tree.LazyMeterTreeModel;
+import de.schipplock.apps.stromzettel.tree.LoadingTreeNode;
+import de.schipplock.apps.stromzettel.tree.MeterTreeCellRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.*;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeSelectionModel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// the steps of StromZettel.createTree and showMeters without the mouse listener; readings are only paged in when a
+// meter gets expanded, so the history size does not matter here and the meters come without readings
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class TreeBenchmark {
+
+    @Param({ "10", "1000" })
+    public int meters;
+
+    private List<ElectricityMeter> meterList;
+
+    @Setup
+    public void createMeters() {
+        meterList = new ArrayList<>(meters);
+        for (int i = 0; i < meters; i++) {
+            meterList.add(new ElectricityMeter("meter " + i, 30));
+        }
+    }
+
+    @Benchmark
+    public JTree createTree() {
+        var loadingRootNode = new DefaultMutableTreeNode("root");
+        loadingRootNode.add(new LoadingTreeNode("loading"));
+        JTree meterTree = new JTree(new DefaultTreeModel(loadingRootNode));
+        meterTree.setRootVisible(false);
+        meterTree.setShowsRootHandles(true);
+        meterTree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
+        meterTree.setCellRenderer(new MeterTreeCellRenderer());
+        if (meterTree.getRowHeight() <= 0) meterTree.setRowHeight(meterTree.getFontMetrics(meterTree.getFont()).getHeight() + 4);
+        meterTree.setLargeModel(true);
+
+        // the AsyncDAO is only needed for paging, which does not happen until a meter gets expanded
+        var treeModel = new LazyMeterTreeModel(new DefaultMutableTreeNode("root"), null, "more", "loading", Throwable::printStackTrace);
+        treeModel.addMeters(meterList);
+        meterTree.addTreeWillExpandListener(treeModel);
+        meterTree.addTreeExpansionListener(treeModel);
+        meterTree.setModel(treeModel);
+        return meterTree;
+    }
+}
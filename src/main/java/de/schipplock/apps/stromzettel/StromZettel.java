@@ -17,24 +17,50 @@ package de.schipplock.apps.stromzettel;
 
 import de.schipplock.apps.stromzettel.model.ElectricityMeter;
 import de.schipplock.apps.stromzettel.model.Reading;
+import de.schipplock.apps.stromzettel.model.Tariff;
 import de.schipplock.gui.swing.dialogs.AboutDialog;
 import de.schipplock.gui.swing.dialogs.FormDialog;
-import de.schipplock.gui.swing.svgicon.SvgIconManager;
 import de.schipplock.gui.swing.svgicon.SvgIcons;
+import de.schipplock.apps.stromzettel.analytics.ConsumptionSeries;
+import de.schipplock.apps.stromzettel.analytics.PriceSchedule;
+import de.schipplock.apps.stromzettel.chart.ConsumptionChartPanel;
+import de.schipplock.apps.stromzettel.chart.ConsumptionTiers;
+import de.schipplock.apps.stromzettel.dao.AsyncDAO;
+import de.schipplock.apps.stromzettel.dao.Database;
 import de.schipplock.apps.stromzettel.dao.ElectricityMeterDAO;
+import de.schipplock.apps.stromzettel.dao.ReadingDAO;
+import de.schipplock.apps.stromzettel.dao.RollupDAO;
+import de.schipplock.apps.stromzettel.dao.TariffDAO;
+import de.schipplock.apps.stromzettel.i18n.Messages;
+import de.schipplock.apps.stromzettel.icons.IconCache;
+import de.schipplock.apps.stromzettel.io.ReadingCsvImporter;
+import de.schipplock.apps.stromzettel.io.ReadingExporter;
+import de.schipplock.apps.stromzettel.metrics.Metrics;
+import de.schipplock.apps.stromzettel.metrics.StartupTimer;
+import de.schipplock.apps.stromzettel.tree.LazyMeterTreeModel;
+import de.schipplock.apps.stromzettel.tree.LoadingTreeNode;
+import de.schipplock.apps.stromzettel.tree.MeterTreeCellRenderer;
+import de.schipplock.apps.stromzettel.tree.MeterTreeNode;
+import de.schipplock.apps.stromzettel.tree.MoreReadingsTreeNode;
+import de.schipplock.apps.stromzettel.tree.TreeFilterPanel;
 import de.schipplock.settings.TomlSettings;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
 import java.io.Serial;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.sql.DriverManager;
-import java.sql.SQLException;
 import java.text.NumberFormat;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 import java.util.Locale;
-import java.util.ResourceBundle;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
 
 import de.schipplock.gui.swing.lafmanager.LAFManager;
 import net.miginfocom.swing.MigLayout;
@@ -52,18 +78,37 @@ public class StromZettel extends JFrame {
     @Serial
     private static final long serialVersionUID = 7485473991756153091L;
 
-    private enum Settings { LANGUAGE, THEME }
+    private enum Settings { LANGUAGE, THEME, SQL_LOGGING }
     
     private static final Path settingsFilePath = Path.of(System.getProperty("user.home"), ".strmzttl", "settings.toml");
     
     private static final de.schipplock.settings.Settings settings = TomlSettings.forUri(settingsFilePath.toUri());
 
-    public static final ElectricityMeterDAO electricityMeterDAO = new ElectricityMeterDAO();
+    private static final StartupTimer startupTimer = new StartupTimer();
+
+    // assigned by bootstrapPersistence once the window is up, the tree stays in its loading state until then
+    public static Database database;
+
+    public static ElectricityMeterDAO electricityMeterDAO;
+
+    public static ReadingDAO readingDAO;
+
+    public static AsyncDAO asyncDAO;
 
     private final JTree tree;
 
+    private LazyMeterTreeModel treeModel;
+
+    private TreeFilterPanel filterPanel;
+
     private final DefaultMutableTreeNode rootNode = new DefaultMutableTreeNode("root");
 
+    private JPopupMenu newMeterPopupMenu;
+
+    private JPopupMenu meterPopupMenu;
+
+    private JPopupMenu readingPopupMenu;
+
     private static final Dimension iconDimension = new Dimension(15, 15);
 
     public static final String COLOR_BLACK = "#000000";
@@ -73,12 +118,81 @@ public class StromZettel extends JFrame {
     public static final String COLOR_RED = "#ba0000";
 
     public static void createAndShowGui() {
-        new StromZettel(localize("application.title")).setVisible(true);
+        var stromZettel = new StromZettel(localize("application.title"));
+        stromZettel.setVisible(true);
+        stromZettel.bootstrapPersistence();
+    }
+
+    // Derby boot, Hibernate bootstrap and the schema update take seconds on a cold start, so they run after the first paint
+    private void bootstrapPersistence() {
+        var bootstrap = new Thread(() -> {
+            try {
+                // printing every statement is slow, so it is only switched on when asked for in the settings
+                var sqlLogging = String.valueOf("true".equals(settings.getValue(Settings.SQL_LOGGING.name())));
+                database = new Database(Map.of("hibernate.show_sql", sqlLogging, "hibernate.format_sql", sqlLogging));
+                electricityMeterDAO = new ElectricityMeterDAO(database);
+                readingDAO = new ReadingDAO(database);
+                asyncDAO = new AsyncDAO(electricityMeterDAO, readingDAO, new RollupDAO(database), new TariffDAO(database));
+                startupTimer.mark("persistence");
+                var meters = electricityMeterDAO.findAll();
+                SwingUtilities.invokeLater(() -> showMeters(meters));
+            } catch (RuntimeException ex) {
+                SwingUtilities.invokeLater(() -> showPersistenceError(ex));
+            }
+        }, "stromzettel-bootstrap");
+        bootstrap.setDaemon(true);
+        bootstrap.start();
+    }
+
+    private void showMeters(List<ElectricityMeter> meters) {
+        long start = System.nanoTime();
+        treeModel = new LazyMeterTreeModel(rootNode, asyncDAO, localize("moreReadingsNode"), localize("loadingNode"), this::showPersistenceError);
+        // whatever was typed into the filter while persistence was booting
+        treeModel.setFilter(filterPanel.getMeterName(), filterPanel.getReadingFilter());
+        treeModel.addMeters(meters);
+        // readings are fetched page by page when a meter gets expanded
+        tree.addTreeWillExpandListener(treeModel);
+        tree.addTreeExpansionListener(treeModel);
+        tree.setModel(treeModel);
+        Metrics.record("tree.reload", System.nanoTime() - start);
+        startupTimer.mark("data");
+        if (Boolean.getBoolean("stromzettel.timing")) {
+            System.out.println(format("startup: %s", startupTimer));
+        }
+        if (Boolean.getBoolean("stromzettel.exitAfterStartup")) {
+            dispatchEvent(new WindowEvent(this, WindowEvent.WINDOW_CLOSING));
+        }
+    }
+
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        if (!startupTimer.isMarked("firstPaint")) startupTimer.mark("firstPaint");
     }
 
     public static String localize(String key) {
-        ResourceBundle bundle = ResourceBundle.getBundle("i18n/MessagesBundle");
-        return bundle.getString(key);
+        return Messages.get(key);
+    }
+
+    private static void applyLanguage(String languageTag) {
+        if ("de".equals(languageTag)) {
+            Locale.setDefault(Locale.GERMANY);
+        } else {
+            Locale.setDefault(Locale.forLanguageTag(languageTag));
+        }
+        Messages.clear();
+    }
+
+    // records how long a dialog takes from being built until it is on screen
+    private static <T extends Window> T timeOpening(String name, T dialog) {
+        long start = System.nanoTime();
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                Metrics.record("dialog." + name, System.nanoTime() - start);
+            }
+        });
+        return dialog;
     }
 
     public static void centerWindow(Window frame) {
@@ -93,23 +207,33 @@ public class StromZettel extends JFrame {
         if (Files.notExists(settingsFilePath)) {
             settings.setValue(Settings.LANGUAGE.name(), "de");
             settings.setValue(Settings.THEME.name(), "FlatLaf IntelliJ");
+            settings.setValue(Settings.SQL_LOGGING.name(), "false");
         }
 
         LAFManager.create().setLookAndFeelByName(settings.getValue(Settings.THEME.name()));
 
-        UIManager.put("Tree.closedIcon", SvgIconManager.getBuiltinIcon(SvgIcons.SVGICON_FOLDER2, iconDimension, COLOR_BLACK));
-        UIManager.put("Tree.openIcon", SvgIconManager.getBuiltinIcon(SvgIcons.SVGICON_FOLDER2_OPEN, iconDimension, COLOR_BLACK));
-        UIManager.put("Tree.leafIcon", SvgIconManager.getBuiltinIcon(SvgIcons.SVGICON_LIGHTNING, iconDimension, COLOR_GREEN));
+        UIManager.put("Tree.closedIcon", IconCache.get(SvgIcons.SVGICON_FOLDER2, iconDimension, COLOR_BLACK));
+        UIManager.put("Tree.openIcon", IconCache.get(SvgIcons.SVGICON_FOLDER2_OPEN, iconDimension, COLOR_BLACK));
+        UIManager.put("Tree.leafIcon", IconCache.get(SvgIcons.SVGICON_LIGHTNING, iconDimension, COLOR_GREEN));
+        prewarmIcons();
 
-        if ("de".equals(settings.getValue(Settings.LANGUAGE.name()))) {
-            Locale.setDefault(Locale.GERMANY);
-        } else {
-            Locale.setDefault(Locale.forLanguageTag(settings.getValue(Settings.LANGUAGE.name())));
-        }
+        applyLanguage(settings.getValue(Settings.LANGUAGE.name()));
 
         javax.swing.SwingUtilities.invokeLater(StromZettel::createAndShowGui);
     }
 
+    // rasterized while the splash screen is still showing, so opening a menu never has to wait for an SVG
+    private static void prewarmIcons() {
+        IconCache.getWindowIconImages("images/logo.svg");
+        IconCache.get(SvgIcons.SVGICON_PLUS_CIRCLE, iconDimension, COLOR_GREEN);
+        IconCache.get(SvgIcons.SVGICON_PLUS_CIRCLE, iconDimension, COLOR_BLACK);
+        IconCache.get(SvgIcons.SVGICON_EYE, iconDimension, COLOR_BLACK);
+        IconCache.get(SvgIcons.SVGICON_EYE, iconDimension, COLOR_GREEN);
+        IconCache.get(SvgIcons.SVGICON_SLIDERS2, iconDimension, COLOR_BLACK);
+        IconCache.get(SvgIcons.SVGICON_DASH_CIRCLE, iconDimension, COLOR_RED);
+        IconCache.get(SvgIcons.SVGICON_INFO_CIRCLE, iconDimension, COLOR_BLACK);
+    }
+
     public StromZettel(String title) {
         super(title);
 
@@ -126,13 +250,24 @@ public class StromZettel extends JFrame {
         centerWindow(this);
     }
 
+    // built on first use and kept, a language or theme change throws them away
+    private void discardPopupMenus() {
+        newMeterPopupMenu = null;
+        meterPopupMenu = null;
+        readingPopupMenu = null;
+    }
+
     private JPopupMenu createNewMeterPopupMenu() {
         JPopupMenu menu = new JPopupMenu();
 
         JMenuItem newMeterMenuItem = menu.add(new JMenuItem(localize("newMeterMenuItem")));
-        newMeterMenuItem.setIcon(SvgIconManager.getBuiltinIcon(SvgIcons.SVGICON_PLUS_CIRCLE, iconDimension, COLOR_GREEN));
+        newMeterMenuItem.setIcon(IconCache.get(SvgIcons.SVGICON_PLUS_CIRCLE, iconDimension, COLOR_GREEN));
         newMeterMenuItem.addActionListener(e -> showNewElectricityMeterDialog());
 
+        JMenuItem exportReadingsMenuItem = menu.add(new JMenuItem(localize("exportReadingsMenuItem")));
+        exportReadingsMenuItem.setIcon(IconCache.get(SvgIcons.SVGICON_EYE, iconDimension, COLOR_BLACK));
+        exportReadingsMenuItem.addActionListener(e -> showExportReadingsDialog());
+
         return menu;
     }
 
@@ -140,17 +275,29 @@ public class StromZettel extends JFrame {
         JPopupMenu menu = new JPopupMenu();
 
         JMenuItem newReadingMenuItem = menu.add(new JMenuItem(localize("newReadingMenuItem")));
-        newReadingMenuItem.setIcon(SvgIconManager.getBuiltinIcon(SvgIcons.SVGICON_PLUS_CIRCLE, iconDimension, COLOR_GREEN));
+        newReadingMenuItem.setIcon(IconCache.get(SvgIcons.SVGICON_PLUS_CIRCLE, iconDimension, COLOR_GREEN));
         newReadingMenuItem.addActionListener(e -> showNewReadingDialog());
 
+        JMenuItem importReadingsMenuItem = menu.add(new JMenuItem(localize("importReadingsMenuItem")));
+        importReadingsMenuItem.setIcon(IconCache.get(SvgIcons.SVGICON_PLUS_CIRCLE, iconDimension, COLOR_BLACK));
+        importReadingsMenuItem.addActionListener(e -> showImportReadingsDialog());
+
+        JMenuItem chartMenuItem = menu.add(new JMenuItem(localize("chartMenuItem")));
+        chartMenuItem.setIcon(IconCache.get(SvgIcons.SVGICON_EYE, iconDimension, COLOR_BLACK));
+        chartMenuItem.addActionListener(e -> showChartDialog());
+
+        JMenuItem newTariffMenuItem = menu.add(new JMenuItem(localize("newTariffMenuItem")));
+        newTariffMenuItem.setIcon(IconCache.get(SvgIcons.SVGICON_PLUS_CIRCLE, iconDimension, COLOR_BLACK));
+        newTariffMenuItem.addActionListener(e -> showNewTariffDialog());
+
         menu.addSeparator();
 
         JMenuItem editMeterMenuItem = menu.add(new JMenuItem(localize("editMeterMenuItem")));
-        editMeterMenuItem.setIcon(SvgIconManager.getBuiltinIcon(SvgIcons.SVGICON_SLIDERS2, iconDimension, COLOR_BLACK));
+        editMeterMenuItem.setIcon(IconCache.get(SvgIcons.SVGICON_SLIDERS2, iconDimension, COLOR_BLACK));
         editMeterMenuItem.addActionListener(e -> showEditElectricityMeterDialog());
 
         JMenuItem deleteMeterMenuItem = menu.add(new JMenuItem(localize("deleteMeterMenuItem")));
-        deleteMeterMenuItem.setIcon(SvgIconManager.getBuiltinIcon(SvgIcons.SVGICON_DASH_CIRCLE, iconDimension, COLOR_RED));
+        deleteMeterMenuItem.setIcon(IconCache.get(SvgIcons.SVGICON_DASH_CIRCLE, iconDimension, COLOR_RED));
         deleteMeterMenuItem.addActionListener(e -> showDeleteElectricityMeterDialog());
 
         return menu;
@@ -160,17 +307,17 @@ public class StromZettel extends JFrame {
         JPopupMenu menu = new JPopupMenu();
 
         JMenuItem displayReadingMenuItem = menu.add(new JMenuItem(localize("displayReadingMenuItem")));
-        displayReadingMenuItem.setIcon(SvgIconManager.getBuiltinIcon(SvgIcons.SVGICON_EYE, iconDimension, COLOR_GREEN));
+        displayReadingMenuItem.setIcon(IconCache.get(SvgIcons.SVGICON_EYE, iconDimension, COLOR_GREEN));
         displayReadingMenuItem.addActionListener(e -> showReadingDialog());
 
         menu.addSeparator();
 
         JMenuItem editReadingMenuItem = menu.add(new JMenuItem(localize("editReadingMenuItem")));
-        editReadingMenuItem.setIcon(SvgIconManager.getBuiltinIcon(SvgIcons.SVGICON_SLIDERS2, iconDimension, COLOR_BLACK));
+        editReadingMenuItem.setIcon(IconCache.get(SvgIcons.SVGICON_SLIDERS2, iconDimension, COLOR_BLACK));
         editReadingMenuItem.addActionListener(e -> showEditReadingDialog());
 
         JMenuItem deleteReadingMenuItem = menu.add(new JMenuItem(localize("deleteReadingMenuItem")));
-        deleteReadingMenuItem.setIcon(SvgIconManager.getBuiltinIcon(SvgIcons.SVGICON_DASH_CIRCLE, iconDimension, COLOR_RED));
+        deleteReadingMenuItem.setIcon(IconCache.get(SvgIcons.SVGICON_DASH_CIRCLE, iconDimension, COLOR_RED));
         deleteReadingMenuItem.addActionListener(e -> showDeleteReadingDialog());
 
         return menu;
@@ -194,23 +341,30 @@ public class StromZettel extends JFrame {
 
             @Override
             public void mouseClicked(MouseEvent e) {
+                if (treeModel == null) return;
                 DefaultMutableTreeNode node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
-                if (e.getClickCount() == 2 && node.getUserObject() instanceof Reading) {
+                if (node instanceof MoreReadingsTreeNode) {
+                    treeModel.loadNextPage((MeterTreeNode) node.getParent());
+                } else if (e.getClickCount() == 2 && node != null && node.getUserObject() instanceof Reading) {
                     showReadingDialog();
                 }
             }
 
             @Override
             public void mouseReleased(MouseEvent e) {
+                if (treeModel == null) return;
                 DefaultMutableTreeNode node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
 
                 if (e.isPopupTrigger()) {
                     if (node == null) {
-                        createNewMeterPopupMenu().show(e.getComponent(), e.getX(), e.getY());
+                        if (newMeterPopupMenu == null) newMeterPopupMenu = createNewMeterPopupMenu();
+                        newMeterPopupMenu.show(e.getComponent(), e.getX(), e.getY());
                     } else if (node.getUserObject() instanceof ElectricityMeter) {
-                        createMeterPopupMenu().show(e.getComponent(), e.getX(), e.getY());
+                        if (meterPopupMenu == null) meterPopupMenu = createMeterPopupMenu();
+                        meterPopupMenu.show(e.getComponent(), e.getX(), e.getY());
                     } else if (node.getUserObject() instanceof Reading) {
-                        createReadingPopupMenu().show(e.getComponent(), e.getX(), e.getY());
+                        if (readingPopupMenu == null) readingPopupMenu = createReadingPopupMenu();
+                        readingPopupMenu.show(e.getComponent(), e.getX(), e.getY());
                     }
                 }
             }
@@ -218,18 +372,16 @@ public class StromZettel extends JFrame {
     }
 
     private JTree createTree() {
-        JTree meterTree = new JTree(rootNode);
+        var loadingRootNode = new DefaultMutableTreeNode("root");
+        loadingRootNode.add(new LoadingTreeNode(localize("loadingNode")));
+        JTree meterTree = new JTree(new DefaultTreeModel(loadingRootNode));
         meterTree.setRootVisible(false);
+        meterTree.setShowsRootHandles(true);
         meterTree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
-
-        electricityMeterDAO.findAll().forEach(meter -> {
-            DefaultMutableTreeNode meterNode = new DefaultMutableTreeNode(meter);
-            meter.getReadings().forEach(reading -> meterNode.add(new DefaultMutableTreeNode(reading)));
-            rootNode.add(meterNode);
-        });
-
-        ((DefaultTreeModel) meterTree.getModel()).reload(rootNode);
-        for (int i = 0; i < meterTree.getRowCount(); i++) meterTree.expandRow(i);
+        meterTree.setCellRenderer(new MeterTreeCellRenderer());
+        // with a fixed row height the tree only asks the renderer for the rows that are visible
+        if (meterTree.getRowHeight() <= 0) meterTree.setRowHeight(meterTree.getFontMetrics(meterTree.getFont()).getHeight() + 4);
+        meterTree.setLargeModel(true);
 
         meterTree.addMouseListener(createTreeMouseListener(meterTree));
 
@@ -238,6 +390,10 @@ public class StromZettel extends JFrame {
 
     private void createMainPanel() {
         JPanel panel = new JPanel(new MigLayout());
+        filterPanel = new TreeFilterPanel(IconCache.get(SvgIcons.SVGICON_SLIDERS2, iconDimension, COLOR_BLACK), (meterName, readingFilter) -> {
+            if (treeModel != null) treeModel.setFilter(meterName, readingFilter);
+        });
+        panel.add(filterPanel, "span, growx, wrap");
         panel.add(new JScrollPane(tree), "span, pushx, growx, pushy, growy");
         getContentPane().add(panel);
     }
@@ -246,18 +402,13 @@ public class StromZettel extends JFrame {
         addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
-                electricityMeterDAO.em.close();
-
-                try {
-                    DriverManager.getConnection(
-                            "jdbc:derby:;shutdown=true");
-                } catch (SQLException ex) {
-                    if (ex.getErrorCode() == 50000) {
-                        // 50000 means = shutdown was a success, yea right
-                        return;
-                    }
-                    throw new RuntimeException(ex);
+                // nothing to flush while persistence is still booting
+                if (asyncDAO == null) return;
+                asyncDAO.shutdown();
+                if (Boolean.getBoolean("stromzettel.timing")) {
+                    System.out.println(database.getMetrics().getReport());
                 }
+                database.close();
             }
         });
     }
@@ -265,7 +416,7 @@ public class StromZettel extends JFrame {
     private void setupWindow() {
         setPreferredSize(new Dimension(240, 220));
         setMinimumSize(new Dimension(240, 200));
-        setIconImages(SvgIconManager.getWindowIconImages("images/logo.svg"));
+        setIconImages(IconCache.getWindowIconImages("images/logo.svg"));
         setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
     }
 
@@ -276,12 +427,12 @@ public class StromZettel extends JFrame {
         menu.getAccessibleContext().setAccessibleDescription("The Help Menu");
         JMenuItem settingsItem = new JMenuItem(localize("window.main.menu.help.settings"), KeyEvent.VK_S);
         settingsItem.getAccessibleContext().setAccessibleDescription(localize("window.main.menu.help.settings.description"));
-        settingsItem.setIcon(SvgIconManager.getBuiltinIcon(SvgIcons.SVGICON_SLIDERS2, iconDimension, COLOR_BLACK));
+        settingsItem.setIcon(IconCache.get(SvgIcons.SVGICON_SLIDERS2, iconDimension, COLOR_BLACK));
         settingsItem.addActionListener(e -> showSettingsDialog());
         JMenuItem aboutItem = new JMenuItem(localize("window.main.menu.help.about"), KeyEvent.VK_A);
         aboutItem.getAccessibleContext().setAccessibleDescription(localize("window.main.menu.help.about.description"));
-        aboutItem.setIcon(SvgIconManager.getBuiltinIcon(SvgIcons.SVGICON_INFO_CIRCLE, iconDimension, COLOR_BLACK));
-        aboutItem.addActionListener(e -> new AboutDialog(this, true)
+        aboutItem.setIcon(IconCache.get(SvgIcons.SVGICON_INFO_CIRCLE, iconDimension, COLOR_BLACK));
+        aboutItem.addActionListener(e -> timeOpening("about", new AboutDialog(this, true))
                 .size(new Dimension(350, 220))
                 .icon("images/logo.svg")
                 .title("StromZettel", "#2b3d30")
@@ -300,17 +451,28 @@ public class StromZettel extends JFrame {
     private void showSettingsDialog() {
         String[] themes = LAFManager.create().getInstalledLookAndFeelNames();
         String[] locales = new String[] { Locale.GERMAN.toLanguageTag(), Locale.US.toLanguageTag() };
+        String[] sqlLoggingOptions = new String[] { localize("settings.sqlLogging.off"), localize("settings.sqlLogging.on") };
+        var sqlLogging = "true".equals(settings.getValue(Settings.SQL_LOGGING.name())) ? sqlLoggingOptions[1] : sqlLoggingOptions[0];
 
-        new FormDialog(this, true)
+        timeOpening("settings", new FormDialog(this, true))
                 .title(localize("settings.title"))
                 .confirmButton()
                 .cancelButton()
                 .beginGroup(localize("settings.global"))
-                .combobox(Settings.LANGUAGE.name(), localize("settings.language"), 150, settings.getValue(Settings.LANGUAGE.name()), locales, values -> settings.setValue(Settings.LANGUAGE.name(), values.get(Settings.LANGUAGE.name())))
+                .combobox(Settings.LANGUAGE.name(), localize("settings.language"), 150, settings.getValue(Settings.LANGUAGE.name()), locales, values -> {
+                    if (values.get(Settings.LANGUAGE.name()).equals(settings.getValue(Settings.LANGUAGE.name()))) return;
+                    settings.setValue(Settings.LANGUAGE.name(), values.get(Settings.LANGUAGE.name()));
+                    // popup menus and dialogs opened from now on use the new language, the window itself after a restart
+                    applyLanguage(values.get(Settings.LANGUAGE.name()));
+                    discardPopupMenus();
+                })
                 .combobox(Settings.THEME.name(), localize("settings.theme"), 150, settings.getValue(Settings.THEME.name()), themes, values -> {
                     settings.setValue(Settings.THEME.name(), values.get(Settings.THEME.name()));
                     LAFManager.create().setLookAndFeelByName(values.get(Settings.THEME.name())).redraw();
+                    discardPopupMenus();
                 })
+                .combobox(Settings.SQL_LOGGING.name(), localize("settings.sqlLogging"), 150, sqlLogging, sqlLoggingOptions,
+                        values -> settings.setValue(Settings.SQL_LOGGING.name(), String.valueOf(sqlLoggingOptions[1].equals(values.get(Settings.SQL_LOGGING.name())))))
                 .endGroup()
                 .onConfirm(values -> settings.persist())
                 .center()
@@ -319,7 +481,7 @@ public class StromZettel extends JFrame {
     }
 
     private void showNewElectricityMeterDialog() {
-        new FormDialog(this, true)
+        timeOpening("newMeter", new FormDialog(this, true))
                 .title(localize("newElectricityMeterDialog.title"))
                 .confirmButton(localize("add"))
                 .cancelButton(localize("cancel"))
@@ -334,10 +496,16 @@ public class StromZettel extends JFrame {
                 .onConfirm(values -> {
                     var name = values.get("NAME");
                     var kwhPrice = Double.parseDouble(values.get("PRICE"));
-                    ElectricityMeter meter = electricityMeterDAO.merge(new ElectricityMeter(name, kwhPrice));
-                    rootNode.add(new DefaultMutableTreeNode(meter));
-                    ((DefaultTreeModel) tree.getModel()).reload(rootNode);
-                    for (int i = 0; i < tree.getRowCount(); i++) tree.expandRow(i);
+                    var meterNode = treeModel.addMeter(new ElectricityMeter(name, kwhPrice));
+                    asyncDAO.merge(meterNode.getMeter()).whenCompleteAsync((meter, error) -> {
+                        if (error != null) {
+                            treeModel.removeMeter(meterNode);
+                            showPersistenceError(error);
+                            return;
+                        }
+                        meterNode.setUserObject(meter);
+                        treeModel.nodeChanged(meterNode);
+                    }, SwingUtilities::invokeLater);
                 })
                 .autosize()
                 .center()
@@ -347,7 +515,7 @@ public class StromZettel extends JFrame {
     private void showEditElectricityMeterDialog() {
         var node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
         ElectricityMeter meter = (ElectricityMeter) node.getUserObject();
-        new FormDialog(this, true)
+        timeOpening("editMeter", new FormDialog(this, true))
                 .title(localize("editElectricityMeterDialog.title"))
                 .confirmButton(localize("editElectricityMeterDialog.confirm"))
                 .cancelButton(localize("editElectricityMeterDialog.cancel"))
@@ -360,11 +528,19 @@ public class StromZettel extends JFrame {
                     }
                 })
                 .onConfirm(values -> {
+                    var previousName = meter.getName();
+                    var previousKwhPrice = meter.getKwhPrice();
                     meter.setName(values.get("NAME"));
                     meter.setKwhPrice(Double.parseDouble(values.get("PRICE")));
-                    electricityMeterDAO.merge(meter);
-                    ((DefaultTreeModel) tree.getModel()).reload(node);
-                    for (int i = 0; i < tree.getRowCount(); i++) tree.expandRow(i);
+                    treeModel.nodeChanged(node);
+                    asyncDAO.merge(meter).whenCompleteAsync((mergedMeter, error) -> {
+                        if (error != null) {
+                            meter.setName(previousName);
+                            meter.setKwhPrice(previousKwhPrice);
+                            treeModel.nodeChanged(node);
+                            showPersistenceError(error);
+                        }
+                    }, SwingUtilities::invokeLater);
                 })
                 .autosize()
                 .center()
@@ -373,16 +549,21 @@ public class StromZettel extends JFrame {
 
     public void showDeleteElectricityMeterDialog() {
         if (!forSure()) return;
-        var node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
-        var meter = (ElectricityMeter) ((DefaultMutableTreeNode) tree.getLastSelectedPathComponent()).getUserObject();
-        electricityMeterDAO.delete(meter);
-        ((DefaultTreeModel) tree.getModel()).removeNodeFromParent(node);
+        var node = (MeterTreeNode) tree.getLastSelectedPathComponent();
+        var meter = node.getMeter();
+        int index = treeModel.removeMeter(node);
+        asyncDAO.delete(meter).whenCompleteAsync((ignored, error) -> {
+            if (error != null) {
+                treeModel.restoreMeter(node, index);
+                showPersistenceError(error);
+            }
+        }, SwingUtilities::invokeLater);
     }
 
     private void showNewReadingDialog() {
-        var node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
+        var node = (MeterTreeNode) tree.getLastSelectedPathComponent();
         ElectricityMeter meter = (ElectricityMeter) node.getUserObject();
-        new FormDialog(this, true)
+        timeOpening("newReading", new FormDialog(this, true))
                 .title(localize("newReadingDialog.title"))
                 .confirmButton(localize("newReadingDialog.confirm"))
                 .cancelButton(localize("newReadingDialog.cancel"))
@@ -397,28 +578,174 @@ public class StromZettel extends JFrame {
                 .onConfirm(values -> {
                     var reading = new Reading(Long.parseLong(values.get("READING")), LocalDateTime.parse(values.get("DATETIME")));
                     reading.setElectricityMeter(meter);
-                    meter.addReading(reading);
-                    var updatedMeter = electricityMeterDAO.merge(meter);
-                    node.add(new DefaultMutableTreeNode(updatedMeter.getLatestReading()));
-                    ((DefaultTreeModel) tree.getModel()).reload(node);
-                    for (int i = 0; i < tree.getRowCount(); i++) tree.expandRow(i);
+                    asyncDAO.persist(reading).whenCompleteAsync((persistedReading, error) -> {
+                        if (error != null) {
+                            showPersistenceError(error);
+                            return;
+                        }
+                        // pages are fetched on the reader threads, only once the insert is committed is it part of a first page
+                        treeModel.insertReading(node, persistedReading);
+                        tree.expandPath(new TreePath(node.getPath()));
+                    }, SwingUtilities::invokeLater);
                 })
                 .center()
                 .autosize()
                 .setVisible(true);
     }
 
+    private void showImportReadingsDialog() {
+        var node = (MeterTreeNode) tree.getLastSelectedPathComponent();
+        ElectricityMeter meter = node.getMeter();
+        var fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle(localize("importReadingsDialog.title"));
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        var csvFile = fileChooser.getSelectedFile().toPath();
+
+        var progressMonitor = new ProgressMonitor(this, localize("importReadingsDialog.title"), "", 0, (int) Math.min(csvFile.toFile().length(), Integer.MAX_VALUE));
+        progressMonitor.setMillisToDecideToPopup(0);
+        // parsing runs on a background thread, every commit queues up on the writer like any other write
+        var importer = new ReadingCsvImporter(batch -> asyncDAO.persistAll(batch).join(), ReadingCsvImporter.DEFAULT_COMMIT_SIZE);
+        asyncDAO.submitBackground("importReadings", () -> {
+            try {
+                return importer.importFile(csvFile, meter, (rows, bytes, rowsPerSecond) -> {
+                    SwingUtilities.invokeLater(() -> {
+                        progressMonitor.setNote(format(localize("importReadingsDialog.progress"), rows, rowsPerSecond));
+                        progressMonitor.setProgress((int) Math.min(bytes, Integer.MAX_VALUE));
+                    });
+                    return !progressMonitor.isCanceled();
+                });
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }).whenCompleteAsync((result, error) -> {
+            progressMonitor.close();
+            treeModel.refresh(node);
+            if (error != null) {
+                showPersistenceError(error);
+                return;
+            }
+            var message = format(localize("importReadingsDialog.done"), result.rows());
+            if (result.skippedHeader() != null) message += "\n" + format(localize("importReadingsDialog.headerSkipped"), result.skippedHeader());
+            JOptionPane.showMessageDialog(this, message, localize("importReadingsDialog.title"), JOptionPane.INFORMATION_MESSAGE);
+        }, SwingUtilities::invokeLater);
+    }
+
+    private void showChartDialog() {
+        var node = (MeterTreeNode) tree.getLastSelectedPathComponent();
+        ElectricityMeter meter = node.getMeter();
+        // the tiers are built on the reader thread and costed with the meter's tariffs, the chart itself only has to
+        // pick one while zooming
+        asyncDAO.loadPriceSchedule(meter)
+                .thenCompose(prices -> asyncDAO.submitBackground("loadChart", () -> new ConsumptionTiers(readingDAO.loadSeries(meter), prices)))
+                .whenCompleteAsync((tiers, error) -> {
+                    if (error != null) {
+                        showPersistenceError(error);
+                        return;
+                    }
+                    var dialog = timeOpening("chart", new JDialog(this, format(localize("chartDialog.title"), meter.getName()), false));
+                    dialog.getContentPane().add(new ConsumptionChartPanel(tiers));
+                    dialog.pack();
+                    dialog.setLocationRelativeTo(this);
+                    dialog.setVisible(true);
+                }, SwingUtilities::invokeLater);
+    }
+
+    private void showNewTariffDialog() {
+        var node = (MeterTreeNode) tree.getLastSelectedPathComponent();
+        ElectricityMeter meter = node.getMeter();
+        timeOpening("newTariff", new FormDialog(this, true))
+                .title(localize("newTariffDialog.title"))
+                .confirmButton(localize("newTariffDialog.confirm"))
+                .cancelButton(localize("newTariffDialog.cancel"))
+                .datetimepanel("VALIDFROM", localize("newTariffDialog.validFrom.caption"), 205, LocalDateTime.now())
+                .textfield("PRICE", localize("newTariffDialog.price.caption"), String.valueOf(meter.getKwhPrice()), localize("newTariffDialog.price.tooltip"), 205,
+                        value -> !value.isBlank() && isOptionalPrice(value))
+                .beginGroup(localize("newTariffDialog.offPeak"))
+                .textfield("OFFPEAK_START", localize("newTariffDialog.offPeakStart.caption"), "", localize("newTariffDialog.offPeakStart.tooltip"), 205, value -> isOptionalTime(value))
+                .textfield("OFFPEAK_END", localize("newTariffDialog.offPeakEnd.caption"), "", localize("newTariffDialog.offPeakEnd.tooltip"), 205, value -> isOptionalTime(value))
+                .textfield("OFFPEAK_PRICE", localize("newTariffDialog.offPeakPrice.caption"), "", localize("newTariffDialog.offPeakPrice.tooltip"), 205, value -> isOptionalPrice(value))
+                .endGroup()
+                .onConfirm(values -> {
+                    var tariff = new Tariff(meter, LocalDateTime.parse(values.get("VALIDFROM")), Double.parseDouble(values.get("PRICE")));
+                    // the window only counts when all of it was filled in
+                    if (!values.get("OFFPEAK_START").isBlank() && !values.get("OFFPEAK_END").isBlank() && !values.get("OFFPEAK_PRICE").isBlank()) {
+                        tariff.setOffPeak(LocalTime.parse(values.get("OFFPEAK_START")), LocalTime.parse(values.get("OFFPEAK_END")), Double.parseDouble(values.get("OFFPEAK_PRICE")));
+                    }
+                    asyncDAO.persist(tariff).whenCompleteAsync((kwhPrice, error) -> {
+                        if (error != null) {
+                            showPersistenceError(error);
+                            return;
+                        }
+                        meter.setKwhPrice(kwhPrice);
+                        treeModel.nodeChanged(node);
+                    }, SwingUtilities::invokeLater);
+                })
+                .center()
+                .autosize()
+                .setVisible(true);
+    }
+
+    private static boolean isOptionalPrice(String value) {
+        try {
+            return value.isBlank() || Double.parseDouble(value) > 0;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    private static boolean isOptionalTime(String value) {
+        try {
+            return value.isBlank() || LocalTime.parse(value) != null;
+        } catch (DateTimeParseException ex) {
+            return false;
+        }
+    }
+
+    private void showExportReadingsDialog() {
+        var fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle(localize("exportReadingsDialog.title"));
+        fileChooser.setSelectedFile(new File("stromzettel.csv"));
+        if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        var exportFile = fileChooser.getSelectedFile().toPath();
+
+        var exporter = new ReadingExporter(database.getEntityManagerFactory());
+        asyncDAO.submitBackground("exportReadings", () -> {
+            try (var writer = Files.newBufferedWriter(exportFile)) {
+                return exporter.export(writer, ReadingExporter.Format.forFileName(exportFile.getFileName().toString()));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }).whenCompleteAsync((rows, error) -> {
+            if (error != null) {
+                showPersistenceError(error);
+                return;
+            }
+            JOptionPane.showMessageDialog(this, format(localize("exportReadingsDialog.done"), rows, exportFile), localize("exportReadingsDialog.title"), JOptionPane.INFORMATION_MESSAGE);
+        }, SwingUtilities::invokeLater);
+    }
+
     private void showReadingDialog() {
         var node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
         Reading reading = (Reading) node.getUserObject();
         ElectricityMeter meter = reading.getElectricityMeter();
-        Reading previousReading = meter.getPreviousReading(reading);
+        asyncDAO.findPrevious(reading).thenCombine(asyncDAO.loadPriceSchedule(meter), Map::entry).whenCompleteAsync((previousAndPrices, error) -> {
+            if (error != null) {
+                showPersistenceError(error);
+                return;
+            }
+            showReadingDialog(reading, previousAndPrices.getKey(), previousAndPrices.getValue());
+        }, SwingUtilities::invokeLater);
+    }
 
+    private void showReadingDialog(Reading reading, Reading previousReading, PriceSchedule prices) {
         long diff = reading.getReadingValue() - previousReading.getReadingValue();
-        double kwhPrice = meter.getKwhPrice() / 100;
-        double costs = diff * kwhPrice;
+        long from = ConsumptionSeries.toEpochSecond(previousReading.getReadingDate());
+        long to = ConsumptionSeries.toEpochSecond(reading.getReadingDate());
+        double costs = prices.costs(from, to, diff);
+        // the average over the interval, it only differs from a single price when tariffs changed or a night rate applied
+        double kwhPrice = diff == 0 ? prices.priceAt(to) / 100 : costs / diff;
 
-        new FormDialog(this, true)
+        timeOpening("reading", new FormDialog(this, true))
                 .title(localize("reading"))
                 .confirmButton(localize("ok"))
                 .beginGroup(localize("costs"))
@@ -435,9 +762,9 @@ public class StromZettel extends JFrame {
     private void showEditReadingDialog() {
         var node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
         Reading reading = (Reading) node.getUserObject();
-        ElectricityMeter meter = reading.getElectricityMeter();
+        var meterNode = (MeterTreeNode) node.getParent();
 
-        new FormDialog(this, true)
+        timeOpening("editReading", new FormDialog(this, true))
                 .title(localize("editReadingDialog.title"))
                 .confirmButton(localize("editReadingDialog.confirm"))
                 .cancelButton(localize("editReadingDialog.cancel"))
@@ -450,13 +777,27 @@ public class StromZettel extends JFrame {
                 })
                 .datetimepanel("DATETIME", localize("editReadingDialog.datetime.caption"), 205, reading.getReadingDate())
                 .onConfirm(values -> {
+                    var previousReadingValue = reading.getReadingValue();
+                    var previousReadingDate = reading.getReadingDate();
                     Long readingValue = Long.parseLong(values.get("READING"));
                     LocalDateTime localDateTime = LocalDateTime.parse(values.get("DATETIME"));
                     reading.setReadingValue(readingValue);
                     reading.setReadingDate(localDateTime);
-                    electricityMeterDAO.merge(meter);
-                    ((DefaultTreeModel) tree.getModel()).reload(node);
-                    for (int i = 0; i < tree.getRowCount(); i++) tree.expandRow(i);
+                    int generation = meterNode.getGeneration();
+                    treeModel.readingChanged(node, previousReadingDate);
+                    asyncDAO.merge(reading).whenCompleteAsync((mergedReading, error) -> {
+                        if (error != null) {
+                            reading.setReadingValue(previousReadingValue);
+                            reading.setReadingDate(previousReadingDate);
+                            if (node.getParent() == null) {
+                                // the edit had been filtered away, the restored reading may match again
+                                if (generation == meterNode.getGeneration()) treeModel.insertReading(meterNode, reading);
+                            } else {
+                                treeModel.readingChanged(node, localDateTime);
+                            }
+                            showPersistenceError(error);
+                        }
+                    }, SwingUtilities::invokeLater);
                 })
                 .center()
                 .autosize()
@@ -467,10 +808,24 @@ public class StromZettel extends JFrame {
         if (!forSure()) return;
         var node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
         var reading = (Reading) ((DefaultMutableTreeNode) tree.getLastSelectedPathComponent()).getUserObject();
-        var meter = reading.getElectricityMeter();
-        meter.removeReading(reading);
-        electricityMeterDAO.merge(meter);
-        ((DefaultTreeModel) tree.getModel()).removeNodeFromParent(node);
+        var meterNode = (MeterTreeNode) node.getParent();
+        int index = meterNode.getIndex(node);
+        int generation = meterNode.getGeneration();
+        treeModel.removeNodeFromParent(node);
+        asyncDAO.delete(reading).whenCompleteAsync((nothing, error) -> {
+            if (error != null) {
+                if (generation == meterNode.getGeneration()) {
+                    treeModel.insertNodeInto(node, meterNode, Math.min(index, meterNode.getChildCount()));
+                }
+                showPersistenceError(error);
+            }
+        }, SwingUtilities::invokeLater);
+    }
+
+    private void showPersistenceError(Throwable error) {
+        var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        JOptionPane.showMessageDialog(this, format("%s%n%s", localize("persistenceErrorDialog.message"), cause.getMessage()),
+                localize("persistenceErrorDialog.title"), JOptionPane.ERROR_MESSAGE);
     }
 
     private boolean forSure() {
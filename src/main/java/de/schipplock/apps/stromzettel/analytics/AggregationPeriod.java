@@ -0,0 +1,76 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.analytics;
+
+// calendar arithmetic on epoch seconds, so bucketing a reading needs neither LocalDateTime nor any other allocation
+public enum AggregationPeriod {
+
+    DAY, WEEK, MONTH, YEAR;
+
+    private static final long SECONDS_PER_DAY = 86_400;
+
+    public long start(long epochSecond) {
+        long days = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        return switch (this) {
+            case DAY -> days * SECONDS_PER_DAY;
+            // 1970-01-01 was a thursday, weeks start on monday
+            case WEEK -> (days - Math.floorMod(days + 3, 7)) * SECONDS_PER_DAY;
+            case MONTH -> daysFromCivil(yearOf(days), monthOf(days), 1) * SECONDS_PER_DAY;
+            case YEAR -> daysFromCivil(yearOf(days), 1, 1) * SECONDS_PER_DAY;
+        };
+    }
+
+    // start of the period after the one the given second falls into
+    public long next(long epochSecond) {
+        long start = start(epochSecond);
+        return switch (this) {
+            case DAY -> start + SECONDS_PER_DAY;
+            case WEEK -> start + 7 * SECONDS_PER_DAY;
+            // from the first of a month 31 days always land in the next month, 366 days from new year in the next year
+            case MONTH -> start(start + 31 * SECONDS_PER_DAY);
+            case YEAR -> start(start + 366 * SECONDS_PER_DAY);
+        };
+    }
+
+    // the days <-> civil date conversions follow Howard Hinnant's chrono-compatible algorithms
+    private static long yearOf(long days) {
+        long z = days + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long dayOfEra = z - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        return yearOfEra + era * 400 + (shiftedMonth >= 10 ? 1 : 0);
+    }
+
+    private static int monthOf(long days) {
+        long z = days + 719_468;
+        long dayOfEra = z - Math.floorDiv(z, 146_097) * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (int) ((5 * dayOfYear + 2) / 153);
+        return shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+    }
+
+    private static long daysFromCivil(long year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = Math.floorDiv(year, 400);
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097 + dayOfEra - 719_468;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.analytics;
+
+import de.schipplock.apps.stromzettel.model.Reading;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collection;
+
+// a meter's readings as two parallel primitive arrays sorted by date, so the math below never boxes
+public class ConsumptionSeries {
+
+    private final long[] epochSeconds;
+
+    private final long[] values;
+
+    private final int size;
+
+    public ConsumptionSeries(long[] epochSeconds, long[] values, int size) {
+        this.epochSeconds = epochSeconds;
+        this.values = values;
+        this.size = size;
+    }
+
+    public static ConsumptionSeries of(Collection<Reading> readings) {
+        var builder = new Builder(readings.size());
+        readings.stream().sorted(Reading.BY_DATE).forEach(reading -> builder.add(toEpochSecond(reading.getReadingDate()), reading.getReadingValue()));
+        return builder.build();
+    }
+
+    // the wall clock time is read as UTC, so period boundaries are the user's local days and months
+    public static long toEpochSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getEpochSecond(int index) {
+        return epochSeconds[index];
+    }
+
+    public long getValue(int index) {
+        return values[index];
+    }
+
+    // consumption between the previous reading and this one, the first reading has nothing to compare against
+    public long getDelta(int index) {
+        return index == 0 ? 0 : values[index] - values[index - 1];
+    }
+
+    public long[] deltas() {
+        long[] deltas = new long[size];
+        for (int i = 1; i < size; i++) deltas[i] = values[i] - values[i - 1];
+        return deltas;
+    }
+
+    // mean consumption of the last "window" intervals ending at each reading
+    public double[] rollingAverage(int window) {
+        if (window < 1) throw new IllegalArgumentException("window must be at least 1");
+        double[] averages = new double[size];
+        long sum = 0;
+        for (int i = 1; i < size; i++) {
+            sum += values[i] - values[i - 1];
+            if (i > window) sum -= values[i - window] - values[i - window - 1];
+            averages[i] = sum / (double) Math.min(i, window);
+        }
+        return averages;
+    }
+
+    // first index whose timestamp is not before the given one
+    public int lowerBound(long epochSecond) {
+        int index = Arrays.binarySearch(epochSeconds, 0, size, epochSecond);
+        if (index < 0) return -index - 1;
+        while (index > 0 && epochSeconds[index - 1] == epochSecond) index--;
+        return index;
+    }
+
+    // consumption of the intervals that end within [fromEpochSecond, toEpochSecond)
+    public long getConsumption(long fromEpochSecond, long toEpochSecond) {
+        long total = 0;
+        for (int i = Math.max(lowerBound(fromEpochSecond), 1); i < size && epochSeconds[i] < toEpochSecond; i++) {
+            total += values[i] - values[i - 1];
+        }
+        return total;
+    }
+
+    // costs of the intervals that end within [fromEpochSecond, toEpochSecond)
+    public double getCosts(long fromEpochSecond, long toEpochSecond, PriceSchedule prices) {
+        var cursor = prices.cursor();
+        double total = 0;
+        for (int i = Math.max(lowerBound(fromEpochSecond), 1); i < size && epochSeconds[i] < toEpochSecond; i++) {
+            total += cursor.costs(epochSeconds[i - 1], epochSeconds[i], values[i] - values[i - 1]);
+        }
+        return total;
+    }
+
+    // kwhPrice is in cents like on the meter
+    public PeriodAggregate aggregate(AggregationPeriod period, double kwhPrice) {
+        return aggregate(period, PriceSchedule.constant(kwhPrice));
+    }
+
+    // every interval is booked on the period its closing reading falls into
+    public PeriodAggregate aggregate(AggregationPeriod period, PriceSchedule prices) {
+        long[] periodStarts = new long[Math.max(size, 1)];
+        long[] consumption = new long[periodStarts.length];
+        double[] costs = new double[periodStarts.length];
+        var cursor = prices.cursor();
+        int periods = 0;
+        for (int i = 0; i < size; i++) {
+            long periodStart = period.start(epochSeconds[i]);
+            if (periods == 0 || periodStarts[periods - 1] != periodStart) {
+                periodStarts[periods++] = periodStart;
+            }
+            consumption[periods - 1] += getDelta(i);
+            if (i > 0) costs[periods - 1] += cursor.costs(epochSeconds[i - 1], epochSeconds[i], getDelta(i));
+        }
+        return new PeriodAggregate(period, periodStarts, consumption, costs, periods);
+    }
+
+    public static class Builder {
+
+        private long[] epochSeconds;
+
+        private long[] values;
+
+        private int size;
+
+        public Builder() {
+            this(64);
+        }
+
+        public Builder(int initialCapacity) {
+            epochSeconds = new long[Math.max(initialCapacity, 1)];
+            values = new long[epochSeconds.length];
+        }
+
+        // expects the rows in date order
+        public Builder add(long epochSecond, long value) {
+            if (size == epochSeconds.length) {
+                epochSeconds = Arrays.copyOf(epochSeconds, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            epochSeconds[size] = epochSecond;
+            values[size] = value;
+            size++;
+            return this;
+        }
+
+        public ConsumptionSeries build() {
+            return new ConsumptionSeries(epochSeconds, values, size);
+        }
+    }
+}
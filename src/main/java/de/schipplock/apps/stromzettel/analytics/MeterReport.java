@@ -0,0 +1,50 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.analytics;
+
+public class MeterReport {
+
+    private final Long meterId;
+
+    private final String meterName;
+
+    private final long consumption;
+
+    private final double costs;
+
+    public MeterReport(Long meterId, String meterName, long consumption, double costs) {
+        this.meterId = meterId;
+        this.meterName = meterName;
+        this.consumption = consumption;
+        this.costs = costs;
+    }
+
+    public Long getMeterId() {
+        return meterId;
+    }
+
+    public String getMeterName() {
+        return meterName;
+    }
+
+    public long getConsumption() {
+        return consumption;
+    }
+
+    public double getCosts() {
+        return costs;
+    }
+}
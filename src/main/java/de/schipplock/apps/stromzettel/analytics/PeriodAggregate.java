@@ -0,0 +1,76 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.analytics;
+
+import java.util.Arrays;
+
+public class PeriodAggregate {
+
+    private final AggregationPeriod period;
+
+    private final long[] periodStarts;
+
+    private final long[] consumption;
+
+    private final double[] costs;
+
+    private final int size;
+
+    public PeriodAggregate(AggregationPeriod period, long[] periodStarts, long[] consumption, double[] costs, int size) {
+        this.period = period;
+        this.periodStarts = periodStarts;
+        this.consumption = consumption;
+        this.costs = costs;
+        this.size = size;
+    }
+
+    public AggregationPeriod getPeriod() {
+        return period;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getPeriodStart(int index) {
+        return periodStarts[index];
+    }
+
+    public long getConsumption(int index) {
+        return consumption[index];
+    }
+
+    public double getCosts(int index) {
+        return costs[index];
+    }
+
+    public long getTotalConsumption() {
+        long total = 0;
+        for (int i = 0; i < size; i++) total += consumption[i];
+        return total;
+    }
+
+    public double getTotalCosts() {
+        double total = 0;
+        for (int i = 0; i < size; i++) total += costs[i];
+        return total;
+    }
+
+    // index of the period that starts at the given epoch second, negative when there is none (see Arrays.binarySearch)
+    public int indexOf(long periodStart) {
+        return Arrays.binarySearch(periodStarts, 0, size, periodStart);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.analytics;
+
+import java.util.List;
+
+public class PortfolioReport {
+
+    private final List<MeterReport> meterReports;
+
+    private final long totalConsumption;
+
+    private final double totalCosts;
+
+    public PortfolioReport(List<MeterReport> meterReports) {
+        this.meterReports = List.copyOf(meterReports);
+        // summed in meter order, so the totals do not depend on how the work was split up
+        long consumption = 0;
+        double costs = 0;
+        for (var meterReport : this.meterReports) {
+            consumption += meterReport.getConsumption();
+            costs += meterReport.getCosts();
+        }
+        this.totalConsumption = consumption;
+        this.totalCosts = costs;
+    }
+
+    public List<MeterReport> getMeterReports() {
+        return meterReports;
+    }
+
+    public long getTotalConsumption() {
+        return totalConsumption;
+    }
+
+    public double getTotalCosts() {
+        return totalCosts;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.analytics;
+
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+
+import java.io.Serial;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// consumption and costs of many meters for one date range, one fork/join leaf per handful of meters
+public class PortfolioReporter {
+
+    private static final int METERS_PER_TASK = 4;
+
+    private final ForkJoinPool pool;
+
+    public PortfolioReporter() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public PortfolioReporter(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    // range is [fromEpochSecond, toEpochSecond), meters without readings are reported with zero consumption and meters
+    // without a price schedule with their current price
+    public PortfolioReport report(List<ElectricityMeter> meters, Map<Long, ConsumptionSeries> series, Map<Long, PriceSchedule> prices, long fromEpochSecond, long toEpochSecond) {
+        var meterReports = new MeterReport[meters.size()];
+        pool.invoke(new ReportTask(meters, series, prices, fromEpochSecond, toEpochSecond, meterReports, 0, meters.size()));
+        return new PortfolioReport(Arrays.asList(meterReports));
+    }
+
+    public PortfolioReport reportSequentially(List<ElectricityMeter> meters, Map<Long, ConsumptionSeries> series, Map<Long, PriceSchedule> prices, long fromEpochSecond, long toEpochSecond) {
+        var meterReports = new MeterReport[meters.size()];
+        for (int i = 0; i < meterReports.length; i++) {
+            meterReports[i] = reportMeter(meters.get(i), series, prices, fromEpochSecond, toEpochSecond);
+        }
+        return new PortfolioReport(Arrays.asList(meterReports));
+    }
+
+    private static MeterReport reportMeter(ElectricityMeter meter, Map<Long, ConsumptionSeries> series, Map<Long, PriceSchedule> prices, long fromEpochSecond, long toEpochSecond) {
+        var meterSeries = series.get(meter.getId());
+        if (meterSeries == null) return new MeterReport(meter.getId(), meter.getName(), 0, 0);
+        var schedule = prices.get(meter.getId());
+        if (schedule == null) schedule = PriceSchedule.constant(meter.getKwhPrice());
+        return new MeterReport(meter.getId(), meter.getName(), meterSeries.getConsumption(fromEpochSecond, toEpochSecond),
+                meterSeries.getCosts(fromEpochSecond, toEpochSecond, schedule));
+    }
+
+    private static class ReportTask extends RecursiveAction {
+
+        @Serial
+        private static final long serialVersionUID = -2760431904735516373L;
+
+        private final transient List<ElectricityMeter> meters;
+
+        private final transient Map<Long, ConsumptionSeries> series;
+
+        private final transient Map<Long, PriceSchedule> prices;
+
+        private final long fromEpochSecond;
+
+        private final long toEpochSecond;
+
+        private final MeterReport[] meterReports;
+
+        private final int from;
+
+        private final int to;
+
+        ReportTask(List<ElectricityMeter> meters, Map<Long, ConsumptionSeries> series, Map<Long, PriceSchedule> prices, long fromEpochSecond, long toEpochSecond, MeterReport[] meterReports, int from, int to) {
+            this.meters = meters;
+            this.series = series;
+            this.prices = prices;
+            this.fromEpochSecond = fromEpochSecond;
+            this.toEpochSecond = toEpochSecond;
+            this.meterReports = meterReports;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= METERS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    meterReports[i] = reportMeter(meters.get(i), series, prices, fromEpochSecond, toEpochSecond);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ReportTask(meters, series, prices, fromEpochSecond, toEpochSecond, meterReports, from, middle),
+                    new ReportTask(meters, series, prices, fromEpochSecond, toEpochSecond, meterReports, middle, to));
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.analytics;
+
+import de.schipplock.apps.stromzettel.model.Tariff;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+// the tariffs of a meter as parallel arrays sorted by the moment they take effect; a binary search finds the tariff of
+// any moment and a Cursor walks the tariffs along with readings in date order, so costing a whole series stays
+// linear in readings; prices are cents per kWh like on the meter, costs come out in euros
+public class PriceSchedule {
+
+    private static final int SECONDS_PER_DAY = 86_400;
+
+    private final long[] validFrom;
+
+    private final double[] kwhPrices;
+
+    // second of the day, a window that starts where it ends means there is none
+    private final int[] offPeakStarts;
+
+    private final int[] offPeakEnds;
+
+    private final double[] offPeakKwhPrices;
+
+    private final int size;
+
+    private PriceSchedule(Builder builder) {
+        this.validFrom = builder.validFrom;
+        this.kwhPrices = builder.kwhPrices;
+        this.offPeakStarts = builder.offPeakStarts;
+        this.offPeakEnds = builder.offPeakEnds;
+        this.offPeakKwhPrices = builder.offPeakKwhPrices;
+        this.size = builder.size;
+    }
+
+    public static PriceSchedule constant(double kwhPrice) {
+        return new Builder(1).add(Long.MIN_VALUE, kwhPrice).build();
+    }
+
+    public static PriceSchedule of(Collection<Tariff> tariffs) {
+        var builder = new Builder(tariffs.size());
+        tariffs.stream().sorted(Comparator.comparing(Tariff::getValidFrom)).forEach(tariff -> {
+            long from = ConsumptionSeries.toEpochSecond(tariff.getValidFrom());
+            if (tariff.hasOffPeak()) {
+                builder.add(from, tariff.getKwhPrice(), tariff.getOffPeakStart().toSecondOfDay(), tariff.getOffPeakEnd().toSecondOfDay(), tariff.getOffPeakKwhPrice());
+            } else {
+                builder.add(from, tariff.getKwhPrice());
+            }
+        });
+        return builder.build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // the last tariff that took effect at or before the given moment, the first one also covers everything before it
+    public int indexAt(long epochSecond) {
+        int index = Arrays.binarySearch(validFrom, 0, size, epochSecond);
+        if (index < 0) return Math.max(-index - 2, 0);
+        while (index + 1 < size && validFrom[index + 1] == epochSecond) index++;
+        return index;
+    }
+
+    public double priceAt(long epochSecond) {
+        if (size == 0) return 0;
+        int index = indexAt(epochSecond);
+        return isOffPeak(index, Math.floorMod(epochSecond, SECONDS_PER_DAY)) ? offPeakKwhPrices[index] : kwhPrices[index];
+    }
+
+    // for a single interval, a series should use a Cursor
+    public double costs(long fromEpochSecond, long toEpochSecond, long consumption) {
+        return cursor().costs(fromEpochSecond, toEpochSecond, consumption);
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    private boolean isOffPeak(int index, int secondOfDay) {
+        int start = offPeakStarts[index];
+        int end = offPeakEnds[index];
+        if (start == end) return false;
+        return start < end ? secondOfDay >= start && secondOfDay < end : secondOfDay >= start || secondOfDay < end;
+    }
+
+    // price times seconds over [from, to) within one tariff
+    private double integral(int index, long from, long to) {
+        long seconds = to - from;
+        if (offPeakStarts[index] == offPeakEnds[index]) return kwhPrices[index] * seconds;
+        long offPeakSeconds = offPeakSecondsBefore(index, to) - offPeakSecondsBefore(index, from);
+        return kwhPrices[index] * (seconds - offPeakSeconds) + offPeakKwhPrices[index] * offPeakSeconds;
+    }
+
+    // off-peak seconds between the epoch and the given moment in closed form, so long intervals cost no more than short ones
+    private long offPeakSecondsBefore(int index, long epochSecond) {
+        long days = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        int secondOfDay = Math.floorMod(epochSecond, SECONDS_PER_DAY);
+        int start = offPeakStarts[index];
+        int end = offPeakEnds[index];
+        if (start < end) return days * (end - start) + Math.min(Math.max(secondOfDay - start, 0), end - start);
+        // the window wraps around midnight
+        return days * (SECONDS_PER_DAY - start + end) + Math.min(secondOfDay, end) + Math.max(secondOfDay - start, 0);
+    }
+
+    // remembers where the previous interval ended, intervals given in date order only ever move it forward
+    public class Cursor {
+
+        private int index;
+
+        // the consumption is taken to be spread evenly over [fromEpochSecond, toEpochSecond)
+        public double costs(long fromEpochSecond, long toEpochSecond, long consumption) {
+            if (size == 0 || consumption == 0) return 0;
+            if (validFrom[index] > fromEpochSecond && index > 0) index = indexAt(fromEpochSecond);
+            while (index + 1 < size && validFrom[index + 1] <= fromEpochSecond) index++;
+            if (toEpochSecond <= fromEpochSecond) return consumption * priceAt(toEpochSecond) / 100;
+
+            double priceSeconds = 0;
+            long from = fromEpochSecond;
+            while (true) {
+                long to = index + 1 < size ? Math.min(validFrom[index + 1], toEpochSecond) : toEpochSecond;
+                priceSeconds += integral(index, from, to);
+                if (to == toEpochSecond) break;
+                from = to;
+                index++;
+            }
+            return consumption * priceSeconds / (toEpochSecond - fromEpochSecond) / 100;
+        }
+    }
+
+    public static class Builder {
+
+        private long[] validFrom;
+
+        private double[] kwhPrices;
+
+        private int[] offPeakStarts;
+
+        private int[] offPeakEnds;
+
+        private double[] offPeakKwhPrices;
+
+        private int size;
+
+        public Builder() {
+            this(4);
+        }
+
+        public Builder(int initialCapacity) {
+            int capacity = Math.max(initialCapacity, 1);
+            validFrom = new long[capacity];
+            kwhPrices = new double[capacity];
+            offPeakStarts = new int[capacity];
+            offPeakEnds = new int[capacity];
+            offPeakKwhPrices = new double[capacity];
+        }
+
+        public Builder add(long validFromEpochSecond, double kwhPrice) {
+            return add(validFromEpochSecond, kwhPrice, 0, 0, kwhPrice);
+        }
+
+        // expects the tariffs in the order they take effect
+        public Builder add(long validFromEpochSecond, double kwhPrice, int offPeakStart, int offPeakEnd, double offPeakKwhPrice) {
+            if (size == validFrom.length) {
+                validFrom = Arrays.copyOf(validFrom, size * 2);
+                kwhPrices = Arrays.copyOf(kwhPrices, size * 2);
+                offPeakStarts = Arrays.copyOf(offPeakStarts, size * 2);
+                offPeakEnds = Arrays.copyOf(offPeakEnds, size * 2);
+                offPeakKwhPrices = Arrays.copyOf(offPeakKwhPrices, size * 2);
+            }
+            validFrom[size] = validFromEpochSecond;
+            kwhPrices[size] = kwhPrice;
+            offPeakStarts[size] = offPeakStart;
+            offPeakEnds[size] = offPeakEnd;
+            offPeakKwhPrices[size] = offPeakKwhPrice;
+            size++;
+            return this;
+        }
+
+        public PriceSchedule build() {
+            return new PriceSchedule(this);
+        }
+    }
+}
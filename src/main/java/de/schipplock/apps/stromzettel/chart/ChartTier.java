@@ -0,0 +1,77 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.chart;
+
+import de.schipplock.apps.stromzettel.analytics.AggregationPeriod;
+
+import java.util.Arrays;
+
+// one level of detail of a chart: points sorted by time, each value holds until the next point starts
+public class ChartTier {
+
+    // null for the tier made of the readings themselves
+    private final AggregationPeriod period;
+
+    private final long[] epochSeconds;
+
+    private final double[] values;
+
+    private final int size;
+
+    // the same steps with the costs per day as values, null for a tier that is costs already
+    private final ChartTier costs;
+
+    public ChartTier(AggregationPeriod period, long[] epochSeconds, double[] values, double[] costs, int size) {
+        this.period = period;
+        this.epochSeconds = epochSeconds;
+        this.values = values;
+        this.size = size;
+        this.costs = costs == null ? null : new ChartTier(period, epochSeconds, costs, null, size);
+    }
+
+    public AggregationPeriod getPeriod() {
+        return period;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getEpochSecond(int index) {
+        return epochSeconds[index];
+    }
+
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    public ChartTier getCosts() {
+        return costs;
+    }
+
+    // first index whose timestamp is not before the given one
+    public int lowerBound(long epochSecond) {
+        int index = Arrays.binarySearch(epochSeconds, 0, size, epochSecond);
+        if (index < 0) return -index - 1;
+        while (index > 0 && epochSeconds[index - 1] == epochSecond) index--;
+        return index;
+    }
+
+    // number of points within [fromEpochSecond, toEpochSecond)
+    public int count(long fromEpochSecond, long toEpochSecond) {
+        return lowerBound(toEpochSecond) - lowerBound(fromEpochSecond);
+    }
+}
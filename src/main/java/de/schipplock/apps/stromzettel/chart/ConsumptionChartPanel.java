@@ -0,0 +1,235 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.chart;
+
+import de.schipplock.apps.stromzettel.i18n.Messages;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.io.Serial;
+import java.text.NumberFormat;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import static java.lang.String.format;
+
+// consumption in kWh per day on the left axis and the costs per day on the right one, each with its own line since
+// the price need not be the same all the time; the wheel zooms, dragging pans and a double click shows everything again
+public class ConsumptionChartPanel extends JPanel {
+
+    @Serial
+    private static final long serialVersionUID = -5316826410527386511L;
+
+    private static final Color LINE_COLOR = Color.decode("#19bf17");
+
+    private static final Color COSTS_COLOR = Color.decode("#e08a00");
+
+    private static final Color GRID_COLOR = new Color(0, 0, 0, 30);
+
+    private static final Insets PLOT_INSETS = new Insets(24, 56, 28, 72);
+
+    private static final long MIN_VISIBLE_SECONDS = 3600;
+
+    // the selected tier gets at most this many points per pixel, min/max downsampling does the rest
+    private static final int POINTS_PER_PIXEL = 4;
+
+    private static final int GRID_LINES = 5;
+
+    private static final DateTimeFormatter YEAR = DateTimeFormatter.ofPattern("yyyy");
+
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private final transient ConsumptionTiers tiers;
+
+    private final transient PixelColumns columns = new PixelColumns();
+
+    private final transient PixelColumns costColumns = new PixelColumns();
+
+    private final NumberFormat currencyFormat = NumberFormat.getCurrencyInstance();
+
+    private long fromEpochSecond;
+
+    private long toEpochSecond;
+
+    public ConsumptionChartPanel(ConsumptionTiers tiers) {
+        this.tiers = tiers;
+        setBackground(Color.WHITE);
+        setPreferredSize(new Dimension(720, 360));
+        showEverything();
+
+        var mouseHandler = new MouseAdapter() {
+            private int pressedX;
+
+            private long pressedFrom;
+
+            @Override
+            public void mousePressed(MouseEvent e) {
+                pressedX = e.getX();
+                pressedFrom = fromEpochSecond;
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                double secondsPerPixel = (toEpochSecond - fromEpochSecond) / (double) plotWidth();
+                moveTo(pressedFrom - (long) ((e.getX() - pressedX) * secondsPerPixel), toEpochSecond - fromEpochSecond);
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    showEverything();
+                    repaint();
+                }
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                zoom(e.getX(), Math.pow(1.25, e.getPreciseWheelRotation()));
+            }
+        };
+        addMouseListener(mouseHandler);
+        addMouseMotionListener(mouseHandler);
+        addMouseWheelListener(mouseHandler);
+    }
+
+    private void showEverything() {
+        fromEpochSecond = tiers.getFirstEpochSecond();
+        toEpochSecond = Math.max(tiers.getLastEpochSecond(), fromEpochSecond + MIN_VISIBLE_SECONDS);
+    }
+
+    // keeps the time under the mouse pointer where it is
+    private void zoom(int mouseX, double factor) {
+        long span = toEpochSecond - fromEpochSecond;
+        long fullSpan = Math.max(tiers.getLastEpochSecond() - tiers.getFirstEpochSecond(), MIN_VISIBLE_SECONDS);
+        long newSpan = Math.max(Math.min((long) (span * factor), fullSpan), MIN_VISIBLE_SECONDS);
+        double anchor = Math.min(Math.max((mouseX - PLOT_INSETS.left) / (double) plotWidth(), 0), 1);
+        moveTo(fromEpochSecond + (long) (anchor * (span - newSpan)), newSpan);
+    }
+
+    private void moveTo(long from, long span) {
+        long first = tiers.getFirstEpochSecond();
+        long last = Math.max(tiers.getLastEpochSecond(), first + span);
+        fromEpochSecond = Math.min(Math.max(from, first), last - span);
+        toEpochSecond = fromEpochSecond + span;
+        repaint();
+    }
+
+    private int plotWidth() {
+        return Math.max(getWidth() - PLOT_INSETS.left - PLOT_INSETS.right, 1);
+    }
+
+    private int plotHeight() {
+        return Math.max(getHeight() - PLOT_INSETS.top - PLOT_INSETS.bottom, 1);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        var g2 = (Graphics2D) g.create();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            int width = plotWidth();
+            int height = plotHeight();
+            var tier = tiers.select(fromEpochSecond, toEpochSecond, width, POINTS_PER_PIXEL);
+            columns.fill(tier, fromEpochSecond, toEpochSecond, width);
+            costColumns.fill(tier.getCosts(), fromEpochSecond, toEpochSecond, width);
+            double maxValue = niceCeiling(columns.getMaxValue());
+            double maxCosts = niceCeiling(costColumns.getMaxValue());
+
+            paintAxes(g2, width, height, maxValue, maxCosts);
+            g2.setColor(getForeground());
+            g2.drawString(format("%s (%s)", Messages.get("chart.consumptionPerDay"),
+                    Messages.get(tier.getPeriod() == null ? "chart.tier.readings" : "chart.tier." + tier.getPeriod().name())), PLOT_INSETS.left, PLOT_INSETS.top - 8);
+            g2.setColor(COSTS_COLOR);
+            var costsLabel = Messages.get("chart.costsPerDay");
+            g2.drawString(costsLabel, PLOT_INSETS.left + width - g2.getFontMetrics().stringWidth(costsLabel), PLOT_INSETS.top - 8);
+
+            g2.setStroke(new BasicStroke(1.5f));
+            g2.clipRect(PLOT_INSETS.left, PLOT_INSETS.top - 1, width + 1, height + 2);
+            // the costs go first, where both lines meet the consumption stays on top
+            g2.setColor(COSTS_COLOR);
+            paintLine(g2, costColumns, maxCosts, width, height);
+            g2.setColor(LINE_COLOR);
+            paintLine(g2, columns, maxValue, width, height);
+        } finally {
+            g2.dispose();
+        }
+    }
+
+    private static void paintLine(Graphics2D g2, PixelColumns columns, double maxValue, int width, int height) {
+        int previousX = -1;
+        int previousY = 0;
+        for (int i = 0; i < columns.size(); i++) {
+            int x = PLOT_INSETS.left + columns.getColumn(i);
+            if (previousX >= 0) g2.drawLine(previousX, previousY, x, previousY);
+            g2.drawLine(x, y(columns.getMin(i), maxValue, height), x, y(columns.getMax(i), maxValue, height));
+            previousX = x;
+            previousY = y(columns.getLast(i), maxValue, height);
+        }
+        if (columns.continues()) g2.drawLine(previousX, previousY, PLOT_INSETS.left + width, previousY);
+    }
+
+    private void paintAxes(Graphics2D g2, int width, int height, double maxValue, double maxCosts) {
+        var metrics = g2.getFontMetrics();
+        for (int i = 0; i <= GRID_LINES; i++) {
+            double value = maxValue * i / GRID_LINES;
+            int y = y(value, maxValue, height);
+            g2.setColor(GRID_COLOR);
+            g2.drawLine(PLOT_INSETS.left, y, PLOT_INSETS.left + width, y);
+            g2.setColor(getForeground());
+            var kwh = format("%.1f", value);
+            g2.drawString(kwh, PLOT_INSETS.left - metrics.stringWidth(kwh) - 6, y + metrics.getAscent() / 2);
+            g2.setColor(COSTS_COLOR);
+            g2.drawString(currencyFormat.format(maxCosts * i / GRID_LINES), PLOT_INSETS.left + width + 6, y + metrics.getAscent() / 2);
+        }
+
+        long span = toEpochSecond - fromEpochSecond;
+        var formatter = span > 3 * 365 * 86_400L ? YEAR : span > 90 * 86_400L ? MONTH : DAY;
+        int labelWidth = metrics.stringWidth("0000-00-00") + 24;
+        int labels = Math.max(width / labelWidth, 1);
+        int baseline = PLOT_INSETS.top + height + metrics.getAscent() + 6;
+        for (int i = 0; i <= labels; i++) {
+            int x = PLOT_INSETS.left + width * i / labels;
+            long epochSecond = fromEpochSecond + span * i / labels;
+            var label = LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC).format(formatter);
+            g2.setColor(GRID_COLOR);
+            g2.drawLine(x, PLOT_INSETS.top, x, PLOT_INSETS.top + height);
+            g2.setColor(getForeground());
+            int labelX = Math.min(Math.max(x - metrics.stringWidth(label) / 2, 0), getWidth() - metrics.stringWidth(label));
+            g2.drawString(label, labelX, baseline);
+        }
+    }
+
+    private static int y(double value, double maxValue, int height) {
+        return PLOT_INSETS.top + height - (int) Math.round(value / maxValue * height);
+    }
+
+    // 1, 2 or 5 times a power of ten, so the grid lines get round labels
+    private static double niceCeiling(double value) {
+        if (value <= 0) return 1;
+        double magnitude = Math.pow(10, Math.floor(Math.log10(value)));
+        for (double step : new double[] { 1, 2, 5, 10 }) {
+            if (step * magnitude >= value) return step * magnitude;
+        }
+        return 10 * magnitude;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.chart;
+
+import de.schipplock.apps.stromzettel.analytics.AggregationPeriod;
+import de.schipplock.apps.stromzettel.analytics.ConsumptionSeries;
+import de.schipplock.apps.stromzettel.analytics.PriceSchedule;
+
+import java.util.List;
+
+// the consumption of a meter as kWh per day and its costs per day at every level of detail, built once so zooming and
+// panning only pick a tier
+public class ConsumptionTiers {
+
+    private static final double SECONDS_PER_DAY = 86_400;
+
+    // the finest tier comes first
+    private final List<ChartTier> tiers;
+
+    public ConsumptionTiers(ConsumptionSeries series, PriceSchedule prices) {
+        tiers = List.of(readings(series, prices), aggregate(series, AggregationPeriod.DAY, prices),
+                aggregate(series, AggregationPeriod.WEEK, prices), aggregate(series, AggregationPeriod.MONTH, prices));
+    }
+
+    public List<ChartTier> getTiers() {
+        return tiers;
+    }
+
+    public long getFirstEpochSecond() {
+        var finest = tiers.get(0);
+        return finest.size() == 0 ? 0 : finest.getEpochSecond(0);
+    }
+
+    public long getLastEpochSecond() {
+        var finest = tiers.get(0);
+        return finest.size() == 0 ? 0 : finest.getEpochSecond(finest.size() - 1);
+    }
+
+    // the most detailed tier that still has no more than pointsPerPixel points per pixel column in the visible range
+    public ChartTier select(long fromEpochSecond, long toEpochSecond, int width, int pointsPerPixel) {
+        for (var tier : tiers) {
+            if (tier.count(fromEpochSecond, toEpochSecond) <= (long) width * pointsPerPixel) return tier;
+        }
+        return tiers.get(tiers.size() - 1);
+    }
+
+    // every interval starts at its opening reading and shows its average consumption per day
+    private static ChartTier readings(ConsumptionSeries series, PriceSchedule prices) {
+        int size = Math.max(series.size() - 1, 0);
+        long[] epochSeconds = new long[size + 1];
+        double[] values = new double[size + 1];
+        double[] costs = new double[size + 1];
+        var cursor = prices.cursor();
+        int points = 0;
+        for (int i = 1; i < series.size(); i++) {
+            long seconds = series.getEpochSecond(i) - series.getEpochSecond(i - 1);
+            if (seconds <= 0) continue;
+            epochSeconds[points] = series.getEpochSecond(i - 1);
+            values[points] = series.getDelta(i) * SECONDS_PER_DAY / seconds;
+            costs[points++] = cursor.costs(series.getEpochSecond(i - 1), series.getEpochSecond(i), series.getDelta(i)) * SECONDS_PER_DAY / seconds;
+        }
+        // closes the last interval, so the line ends at the newest reading
+        if (points > 0) {
+            epochSeconds[points] = series.getEpochSecond(series.size() - 1);
+            values[points] = values[points - 1];
+            costs[points] = costs[points - 1];
+            points++;
+        }
+        return new ChartTier(null, epochSeconds, values, costs, points);
+    }
+
+    private static ChartTier aggregate(ConsumptionSeries series, AggregationPeriod period, PriceSchedule prices) {
+        var aggregate = series.aggregate(period, prices);
+        int size = aggregate.size();
+        long[] epochSeconds = new long[size + 1];
+        double[] values = new double[size + 1];
+        double[] costs = new double[size + 1];
+        for (int i = 0; i < size; i++) {
+            long start = aggregate.getPeriodStart(i);
+            double days = (period.next(start) - start) / SECONDS_PER_DAY;
+            epochSeconds[i] = start;
+            values[i] = aggregate.getConsumption(i) / days;
+            costs[i] = aggregate.getCosts(i) / days;
+        }
+        if (size == 0) return new ChartTier(period, epochSeconds, values, costs, 0);
+        // closes the last period
+        epochSeconds[size] = period.next(epochSeconds[size - 1]);
+        values[size] = values[size - 1];
+        costs[size] = costs[size - 1];
+        return new ChartTier(period, epochSeconds, values, costs, size + 1);
+    }
+}
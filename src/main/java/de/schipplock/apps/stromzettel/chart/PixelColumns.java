@@ -0,0 +1,99 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.chart;
+
+// min/max downsampling of a step line: every pixel column keeps the range of values the line passes through there,
+// so peaks survive no matter how many points fall into one column; the arrays are reused between repaints
+public class PixelColumns {
+
+    private int[] columns = new int[0];
+
+    private double[] mins = new double[0];
+
+    private double[] maxs = new double[0];
+
+    // the value the line leaves the column with
+    private double[] lasts = new double[0];
+
+    private int size;
+
+    private boolean continues;
+
+    public void fill(ChartTier tier, long fromEpochSecond, long toEpochSecond, int width) {
+        if (columns.length < width) {
+            columns = new int[width];
+            mins = new double[width];
+            maxs = new double[width];
+            lasts = new double[width];
+        }
+        size = 0;
+        continues = false;
+        if (tier.size() == 0 || width <= 0 || toEpochSecond <= fromEpochSecond) return;
+
+        // starts with the point whose step is already running at the left edge
+        int first = Math.max(tier.lowerBound(fromEpochSecond) - 1, 0);
+        int end = tier.lowerBound(toEpochSecond);
+        double secondsPerColumn = (toEpochSecond - fromEpochSecond) / (double) width;
+        for (int i = first; i < end; i++) {
+            int column = (int) Math.max((tier.getEpochSecond(i) - fromEpochSecond) / secondsPerColumn, 0);
+            double value = tier.getValue(i);
+            if (size > 0 && columns[size - 1] == column) {
+                mins[size - 1] = Math.min(mins[size - 1], value);
+                maxs[size - 1] = Math.max(maxs[size - 1], value);
+            } else {
+                // the step coming in from the left is part of this column as well
+                double incoming = size > 0 ? lasts[size - 1] : value;
+                columns[size] = column;
+                mins[size] = Math.min(incoming, value);
+                maxs[size] = Math.max(incoming, value);
+                size++;
+            }
+            lasts[size - 1] = value;
+        }
+        continues = end < tier.size() && size > 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getColumn(int index) {
+        return columns[index];
+    }
+
+    public double getMin(int index) {
+        return mins[index];
+    }
+
+    public double getMax(int index) {
+        return maxs[index];
+    }
+
+    public double getLast(int index) {
+        return lasts[index];
+    }
+
+    // whether the last value runs on beyond the right edge
+    public boolean continues() {
+        return continues;
+    }
+
+    public double getMaxValue() {
+        double max = 0;
+        for (int i = 0; i < size; i++) max = Math.max(max, maxs[i]);
+        return max;
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.cli;
+
+import de.schipplock.apps.stromzettel.analytics.ConsumptionSeries;
+import de.schipplock.apps.stromzettel.analytics.PortfolioReporter;
+import de.schipplock.apps.stromzettel.dao.Database;
+import de.schipplock.apps.stromzettel.dao.ElectricityMeterDAO;
+import de.schipplock.apps.stromzettel.dao.ReadingDAO;
+import de.schipplock.apps.stromzettel.dao.RollupDAO;
+import de.schipplock.apps.stromzettel.dao.TariffDAO;
+import de.schipplock.apps.stromzettel.io.ReadingCsvImporter;
+import de.schipplock.apps.stromzettel.io.ReadingExporter;
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static de.schipplock.apps.stromzettel.io.ReadingExporter.escapeCsv;
+import static java.lang.String.format;
+
+// command line entry point for batch jobs on machines without a display, e.g.
+// java -cp stromzettel.jar de.schipplock.apps.stromzettel.cli.StromZettelCli export readings.json
+// it must not touch anything from java.awt or javax.swing, started with -cp instead of -jar there is no splash screen either
+public class StromZettelCli {
+
+    // every job reads each row once, so the second-level cache would only cost start-up time; leaving it off also keeps
+    // ehcache from parsing its configuration with JAXB, which drags in java.awt.Image
+    private static final Map<String, Object> BATCH_PROPERTIES = Map.of(
+            "jakarta.persistence.sharedCache.mode", "NONE",
+            "hibernate.cache.use_second_level_cache", "false",
+            "hibernate.cache.use_query_cache", "false");
+
+    private static final LocalDateTime EARLIEST = LocalDate.of(1970, 1, 1).atStartOfDay();
+
+    private static final LocalDateTime LATEST = LocalDate.of(9999, 12, 31).atStartOfDay();
+
+    // every commit rebuilds the rollups from the oldest day it touches and pays for its transaction on top; importing
+    // 200,000 readings took twice as long with commits of 1,000 rows, 50,000 rows saved little more but made a single
+    // commit take 20 s. Unlike in the dialog, no other write has to wait behind these commits
+    private static final int IMPORT_COMMIT_SIZE = 10_000;
+
+    private static final int PROGRESS_ROWS = 100_000;
+
+    private final Map<String, Object> properties = new HashMap<>(BATCH_PROPERTIES);
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        System.exit(new StromZettelCli().run(args));
+    }
+
+    public int run(String[] args) {
+        if (args.length >= 2 && "--database".equals(args[0])) {
+            properties.put("jakarta.persistence.jdbc.url", format("jdbc:derby:%s;create=true", Path.of(args[1]).toAbsolutePath()));
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        if (args.length == 0) return usage();
+        try {
+            return switch (args[0]) {
+                case "meters" -> args.length == 1 ? meters() : usage();
+                case "import" -> args.length == 3 ? importReadings(Path.of(args[1]), args[2]) : usage();
+                case "export" -> args.length == 2 ? export(Path.of(args[1])) : usage();
+                case "report" -> args.length <= 3 ? report(args.length > 1 ? parseDate(args[1]) : EARLIEST, args.length > 2 ? parseDate(args[2]) : LATEST) : usage();
+                case "rebuild-rollups" -> args.length == 1 ? rebuildRollups() : usage();
+                default -> usage();
+            };
+        } catch (IOException | RuntimeException ex) {
+            System.err.println(format("%s failed: %s", args[0], ex.getMessage()));
+            return 1;
+        }
+    }
+
+    private Database openDatabase() {
+        return new Database(properties);
+    }
+
+    private int meters() {
+        var database = openDatabase();
+        try {
+            System.out.println("meter;name;kwhPrice");
+            for (var meter : new ElectricityMeterDAO(database).findAll()) {
+                System.out.println(format(Locale.ROOT, "%d;%s;%.2f", meter.getId(), escapeCsv(meter.getName()), meter.getKwhPrice()));
+            }
+            return 0;
+        } finally {
+            database.close();
+        }
+    }
+
+    private int importReadings(Path csvFile, String meterIdOrName) throws IOException {
+        var database = openDatabase();
+        try {
+            var meter = findMeter(new ElectricityMeterDAO(database).findAll(), meterIdOrName);
+            var result = new ReadingCsvImporter(new ReadingDAO(database), IMPORT_COMMIT_SIZE).importFile(csvFile, meter, (committed, bytes, rowsPerSecond) -> {
+                if (committed % PROGRESS_ROWS == 0) System.err.println(format("%d readings imported (%.0f/s)", committed, rowsPerSecond));
+                return true;
+            });
+            if (result.skippedHeader() != null) System.err.println(format("skipped header \"%s\"", result.skippedHeader()));
+            System.err.println(format("%d readings imported from %s into %s", result.rows(), csvFile, meter.getName()));
+            return 0;
+        } finally {
+            database.close();
+        }
+    }
+
+    // ids win over names, so a meter named "2" can still be reached by its id
+    private static ElectricityMeter findMeter(List<ElectricityMeter> meters, String meterIdOrName) {
+        for (var meter : meters) {
+            if (String.valueOf(meter.getId()).equals(meterIdOrName)) return meter;
+        }
+        var named = meters.stream().filter(meter -> meter.getName().equals(meterIdOrName)).toList();
+        if (named.size() > 1) throw new IllegalArgumentException(format("more than one meter is named \"%s\", use its id", meterIdOrName));
+        if (named.isEmpty()) throw new IllegalArgumentException(format("there is no meter \"%s\"", meterIdOrName));
+        return named.get(0);
+    }
+
+    private int export(Path exportFile) throws IOException {
+        var database = openDatabase();
+        try (var writer = Files.newBufferedWriter(exportFile)) {
+            long rows = new ReadingExporter(database.getEntityManagerFactory()).export(writer, ReadingExporter.Format.forFileName(exportFile.getFileName().toString()));
+            System.err.println(format("%d readings exported to %s", rows, exportFile));
+            return 0;
+        } finally {
+            database.close();
+        }
+    }
+
+    // consumption and costs of the intervals that end within [from, to), one CSV row per meter and the total at the end
+    private int report(LocalDateTime from, LocalDateTime to) {
+        var database = openDatabase();
+        try {
+            var meters = new ElectricityMeterDAO(database).findAll();
+            var series = new ReadingDAO(database).loadAllSeries(from, to);
+            var prices = new TariffDAO(database).loadAllPriceSchedules();
+            var report = new PortfolioReporter().report(meters, series, prices, ConsumptionSeries.toEpochSecond(from), ConsumptionSeries.toEpochSecond(to));
+            System.out.println("meter;name;consumption;costs");
+            for (var meterReport : report.getMeterReports()) {
+                System.out.println(format(Locale.ROOT, "%d;%s;%d;%.2f", meterReport.getMeterId(), escapeCsv(meterReport.getMeterName()), meterReport.getConsumption(), meterReport.getCosts()));
+            }
+            System.out.println(format(Locale.ROOT, ";total;%d;%.2f", report.getTotalConsumption(), report.getTotalCosts()));
+            return 0;
+        } finally {
+            database.close();
+        }
+    }
+
+    private int rebuildRollups() {
+        var database = openDatabase();
+        try {
+            new RollupDAO(database).rebuild();
+            System.err.println("consumption rollups rebuilt");
+            return 0;
+        } finally {
+            database.close();
+        }
+    }
+
+    private static LocalDateTime parseDate(String date) {
+        return LocalDate.parse(date).atStartOfDay();
+    }
+
+    private int usage() {
+        System.err.println("""
+                usage: StromZettelCli [--database <directory>] <command>
+
+                commands:
+                  meters                        lists id, name and current price of every meter
+                  import <file.csv> <meter>     adds the "date;value" rows of the file to the meter with that id or name
+                  export <file.csv|file.json>   writes every reading with consumption and costs
+                  report [<from> [<to>]]        consumption and costs per meter, dates as yyyy-MM-dd, <to> is exclusive
+                  rebuild-rollups               recomputes the daily, monthly and yearly consumption from the readings
+
+                the database defaults to the one the application uses""");
+        return 2;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.dao;
+
+import de.schipplock.apps.stromzettel.analytics.AggregationPeriod;
+import de.schipplock.apps.stromzettel.analytics.ConsumptionSeries;
+import de.schipplock.apps.stromzettel.analytics.PeriodAggregate;
+import de.schipplock.apps.stromzettel.analytics.PriceSchedule;
+import de.schipplock.apps.stromzettel.metrics.Metrics;
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import de.schipplock.apps.stromzettel.model.Reading;
+import de.schipplock.apps.stromzettel.model.Tariff;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+// keeps persistence work off the EDT: writes are serialized on one thread, reads and long running jobs share a small pool
+public class AsyncDAO {
+
+    // leaves one connection of the pool to the writer
+    private static final int READER_THREADS = 3;
+
+    private final ElectricityMeterDAO electricityMeterDAO;
+
+    private final ReadingDAO readingDAO;
+
+    private final RollupDAO rollupDAO;
+
+    private final TariffDAO tariffDAO;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(threadFactory("stromzettel-writer"));
+
+    private final ExecutorService readers = Executors.newFixedThreadPool(READER_THREADS, threadFactory("stromzettel-reader"));
+
+    public AsyncDAO(ElectricityMeterDAO electricityMeterDAO, ReadingDAO readingDAO, RollupDAO rollupDAO, TariffDAO tariffDAO) {
+        this.electricityMeterDAO = electricityMeterDAO;
+        this.readingDAO = readingDAO;
+        this.rollupDAO = rollupDAO;
+        this.tariffDAO = tariffDAO;
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public <T> CompletableFuture<T> submit(String operation, Supplier<T> work) {
+        return run(operation, work, writer);
+    }
+
+    public <T> CompletableFuture<T> submitBackground(String operation, Supplier<T> work) {
+        return run(operation, work, readers);
+    }
+
+    // the time spent waiting in the queue is recorded apart from the time the work itself takes
+    private <T> CompletableFuture<T> run(String operation, Supplier<T> work, ExecutorService executor) {
+        long submitted = System.nanoTime();
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            Metrics.record("async." + operation + ".queued", start - submitted);
+            try {
+                return work.get();
+            } finally {
+                Metrics.record("async." + operation, System.nanoTime() - start);
+            }
+        }, executor);
+    }
+
+    public CompletableFuture<List<ElectricityMeter>> findAll() {
+        return submitBackground("findAll", electricityMeterDAO::findAll);
+    }
+
+    public CompletableFuture<ElectricityMeter> merge(ElectricityMeter electricityMeter) {
+        return submit("merge", () -> electricityMeterDAO.merge(electricityMeter));
+    }
+
+    public CompletableFuture<Void> delete(ElectricityMeter electricityMeter) {
+        return submit("delete", () -> {
+            electricityMeterDAO.delete(electricityMeter);
+            return null;
+        });
+    }
+
+    public CompletableFuture<List<Reading>> findPage(ElectricityMeter meter, Reading after, int maxResults) {
+        return submitBackground("findPage", () -> readingDAO.findPage(meter, after, maxResults));
+    }
+
+    public CompletableFuture<List<Reading>> findPage(ElectricityMeter meter, Reading after, int maxResults, ReadingFilter filter) {
+        return submitBackground("findPage", () -> readingDAO.findPage(meter, after, maxResults, filter));
+    }
+
+    public CompletableFuture<Reading> findPrevious(Reading reading) {
+        return submitBackground("findPrevious", () -> readingDAO.findPrevious(reading));
+    }
+
+    public CompletableFuture<ConsumptionSeries> loadSeries(ElectricityMeter meter) {
+        return submitBackground("loadSeries", () -> readingDAO.loadSeries(meter));
+    }
+
+    public CompletableFuture<Map<Long, ConsumptionSeries>> loadAllSeries(LocalDateTime from, LocalDateTime to) {
+        return submitBackground("loadAllSeries", () -> readingDAO.loadAllSeries(from, to));
+    }
+
+    public CompletableFuture<PeriodAggregate> findRollups(ElectricityMeter meter, AggregationPeriod period) {
+        return submitBackground("findRollups", () -> rollupDAO.findRollups(meter, period));
+    }
+
+    public CompletableFuture<PriceSchedule> loadPriceSchedule(ElectricityMeter meter) {
+        return submitBackground("loadPriceSchedule", () -> tariffDAO.loadPriceSchedule(meter));
+    }
+
+    public CompletableFuture<Double> persist(Tariff tariff) {
+        return submit("persistTariff", () -> tariffDAO.persist(tariff));
+    }
+
+    public CompletableFuture<Reading> persist(Reading reading) {
+        return submit("persistReading", () -> readingDAO.persist(reading));
+    }
+
+    public CompletableFuture<Reading> merge(Reading reading) {
+        return submit("mergeReading", () -> readingDAO.merge(reading));
+    }
+
+    public CompletableFuture<Void> delete(Reading reading) {
+        return submit("deleteReading", () -> {
+            readingDAO.delete(reading);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> persistAll(List<Reading> readings) {
+        return submit("persistReadings", () -> {
+            readingDAO.persistAll(readings);
+            return null;
+        });
+    }
+
+    // lets queued writes finish before the database goes away
+    public void shutdown() {
+        readers.shutdownNow();
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS)) writer.shutdownNow();
+        } catch (InterruptedException ex) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
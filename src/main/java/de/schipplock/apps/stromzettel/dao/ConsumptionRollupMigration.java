@@ -0,0 +1,188 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.dao;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.zip.CRC32;
+
+// creates the rollup table and fills it from the readings that are already there; the fill is a frozen copy of how
+// rollups were booked when this version came out, so later changes to ConsumptionRollups never reach new databases:
+// every interval goes to the day, month and year of its closing reading, priced with the meter's single price
+public class ConsumptionRollupMigration implements Migration {
+
+    // what databases migrated before the checksum covered the statements below have recorded
+    private static final long RELEASED_CHECKSUM = 1;
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final String CREATE_TABLE = """
+            create table CONSUMPTION_ROLLUPS (
+                ELECTRICITY_METER_ID bigint not null,
+                PERIOD varchar(5) not null,
+                PERIOD_START timestamp not null,
+                CONSUMPTION bigint not null,
+                COSTS double not null,
+                primary key (ELECTRICITY_METER_ID, PERIOD, PERIOD_START),
+                constraint FK_ROLLUPS_METER foreign key (ELECTRICITY_METER_ID) references ELECTRICITY_METERS (ID)
+            )""";
+
+    private static final String SELECT_READINGS = """
+            select r.ELECTRICITY_METER_ID, r.READINGDATE, r.READINGVALUE, m.KWHPRICE
+            from READINGS r join ELECTRICITY_METERS m on m.ID = r.ELECTRICITY_METER_ID
+            where r.READINGDATE is not null
+            order by r.ELECTRICITY_METER_ID, r.READINGDATE, r.ID""";
+
+    private static final String INSERT_ROLLUP = """
+            insert into CONSUMPTION_ROLLUPS (ELECTRICITY_METER_ID, PERIOD, PERIOD_START, CONSUMPTION, COSTS)
+            values (?, ?, ?, ?, ?)""";
+
+    private static final String[] PERIODS = { "DAY", "MONTH", "YEAR" };
+
+    @Override
+    public int getVersion() {
+        return 4;
+    }
+
+    @Override
+    public String getDescription() {
+        return "consumption rollups";
+    }
+
+    // covers the statements, the booking code below has to stay as it is
+    @Override
+    public long getChecksum() {
+        var crc = new CRC32();
+        for (var part : new String[] { CREATE_TABLE, SELECT_READINGS, INSERT_ROLLUP, String.join(",", PERIODS) }) {
+            crc.update(part.getBytes(StandardCharsets.UTF_8));
+        }
+        return crc.getValue();
+    }
+
+    // the rows written under the old checksum are the same ones this version writes
+    @Override
+    public boolean matches(long checksum) {
+        return checksum == getChecksum() || checksum == RELEASED_CHECKSUM;
+    }
+
+    @Override
+    public void migrate(Connection connection) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            statement.executeUpdate(CREATE_TABLE);
+        }
+        try (var rollups = new Rollups(connection);
+             var statement = connection.createStatement();
+             var resultSet = statement.executeQuery(SELECT_READINGS)) {
+            long meterId = 0;
+            long previous = 0;
+            boolean first = true;
+            while (resultSet.next()) {
+                long value = resultSet.getLong(3);
+                if (first || resultSet.getLong(1) != meterId) {
+                    meterId = resultSet.getLong(1);
+                    rollups.startMeter(meterId, resultSet.getDouble(4));
+                    first = false;
+                } else {
+                    rollups.add(resultSet.getTimestamp(2).toLocalDateTime(), value - previous);
+                }
+                previous = value;
+            }
+        }
+    }
+
+    private static LocalDateTime periodStart(int period, LocalDateTime dateTime) {
+        return switch (PERIODS[period]) {
+            case "DAY" -> dateTime.truncatedTo(ChronoUnit.DAYS);
+            case "MONTH" -> dateTime.toLocalDate().withDayOfMonth(1).atStartOfDay();
+            default -> dateTime.toLocalDate().withDayOfYear(1).atStartOfDay();
+        };
+    }
+
+    // sums the intervals of one meter in date order and writes a row per period that consumed something
+    private static class Rollups implements AutoCloseable {
+
+        private final PreparedStatement insert;
+
+        private final LocalDateTime[] periodStarts = new LocalDateTime[PERIODS.length];
+
+        private final long[] consumption = new long[PERIODS.length];
+
+        private long meterId;
+
+        private double kwhPrice;
+
+        private int pending;
+
+        Rollups(Connection connection) throws SQLException {
+            insert = connection.prepareStatement(INSERT_ROLLUP);
+        }
+
+        void startMeter(long meterId, double kwhPrice) throws SQLException {
+            flush();
+            this.meterId = meterId;
+            this.kwhPrice = kwhPrice;
+        }
+
+        void add(LocalDateTime readingDate, long delta) throws SQLException {
+            for (int i = 0; i < PERIODS.length; i++) {
+                var start = periodStart(i, readingDate);
+                if (periodStarts[i] != null && !periodStarts[i].equals(start)) write(i);
+                if (periodStarts[i] == null) {
+                    periodStarts[i] = start;
+                    consumption[i] = 0;
+                }
+                consumption[i] += delta;
+            }
+        }
+
+        private void write(int period) throws SQLException {
+            if (consumption[period] != 0) {
+                insert.setLong(1, meterId);
+                insert.setString(2, PERIODS[period]);
+                insert.setTimestamp(3, Timestamp.valueOf(periodStarts[period]));
+                insert.setLong(4, consumption[period]);
+                insert.setDouble(5, consumption[period] * kwhPrice / 100);
+                insert.addBatch();
+                if (++pending == BATCH_SIZE) {
+                    insert.executeBatch();
+                    pending = 0;
+                }
+            }
+            periodStarts[period] = null;
+        }
+
+        private void flush() throws SQLException {
+            for (int i = 0; i < PERIODS.length; i++) {
+                if (periodStarts[i] != null) write(i);
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                flush();
+                if (pending > 0) insert.executeBatch();
+            } finally {
+                insert.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.dao;
+
+import de.schipplock.apps.stromzettel.analytics.AggregationPeriod;
+import de.schipplock.apps.stromzettel.analytics.PriceSchedule;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+// keeps CONSUMPTION_ROLLUPS in step with the readings: like ConsumptionSeries.aggregate every interval is booked on
+// the period its closing reading falls into, a period without a row consumed nothing
+public class ConsumptionRollups {
+
+    public static final List<AggregationPeriod> PERIODS = List.of(AggregationPeriod.DAY, AggregationPeriod.MONTH, AggregationPeriod.YEAR);
+
+    private static final int BATCH_SIZE = 500;
+
+    @FunctionalInterface
+    public interface Prices {
+        PriceSchedule get(Connection connection, long meterId) throws SQLException;
+    }
+
+    private record Neighbour(LocalDateTime readingDate, long readingValue) {
+    }
+
+    private record Sum(long consumption, double costs) {
+    }
+
+    private final Prices prices;
+
+    public ConsumptionRollups(Prices prices) {
+        this.prices = prices;
+    }
+
+    // inserting a reading splits the interval from its predecessor to its successor in two
+    public void readingAdded(Connection connection, long meterId, long readingId, LocalDateTime readingDate, long readingValue) throws SQLException {
+        applyNeighbourhood(connection, meterId, readingId, readingDate, readingValue, 1);
+    }
+
+    // call with the values the reading had in the database, removing it merges its two intervals again
+    public void readingRemoved(Connection connection, long meterId, long readingId, LocalDateTime readingDate, long readingValue) throws SQLException {
+        applyNeighbourhood(connection, meterId, readingId, readingDate, readingValue, -1);
+    }
+
+    private void applyNeighbourhood(Connection connection, long meterId, long readingId, LocalDateTime readingDate, long readingValue, int sign) throws SQLException {
+        if (readingDate == null) return;
+        var previous = neighbour(connection, """
+                select READINGDATE, READINGVALUE from READINGS where ELECTRICITY_METER_ID = ?
+                and READINGDATE <= ? and (READINGDATE < ? or (READINGDATE = ? and ID < ?))
+                order by READINGDATE desc, ID desc fetch first 1 rows only""", meterId, readingId, readingDate);
+        var next = neighbour(connection, """
+                select READINGDATE, READINGVALUE from READINGS where ELECTRICITY_METER_ID = ?
+                and READINGDATE >= ? and (READINGDATE > ? or (READINGDATE = ? and ID > ?))
+                order by READINGDATE, ID fetch first 1 rows only""", meterId, readingId, readingDate);
+        var schedule = prices.get(connection, meterId);
+        long at = toEpochSecond(readingDate);
+
+        if (previous != null) {
+            long consumption = readingValue - previous.readingValue();
+            add(connection, meterId, at, sign * consumption, sign * schedule.costs(toEpochSecond(previous.readingDate()), at, consumption));
+        }
+        if (next != null) {
+            long nextAt = toEpochSecond(next.readingDate());
+            // the successor closes the interval from the reading instead of the one from the predecessor
+            long withReading = next.readingValue() - readingValue;
+            double withReadingCosts = schedule.costs(at, nextAt, withReading);
+            long withoutReading = previous == null ? 0 : next.readingValue() - previous.readingValue();
+            double withoutReadingCosts = previous == null ? 0 : schedule.costs(toEpochSecond(previous.readingDate()), nextAt, withoutReading);
+            add(connection, meterId, nextAt, sign * (withReading - withoutReading), sign * (withReadingCosts - withoutReadingCosts));
+        }
+    }
+
+    public void deleteMeter(Connection connection, long meterId) throws SQLException {
+        try (var statement = connection.prepareStatement("delete from CONSUMPTION_ROLLUPS where ELECTRICITY_METER_ID = ?")) {
+            statement.setLong(1, meterId);
+            statement.executeUpdate();
+        }
+    }
+
+    // recomputes every period of the meter from the start of the day "from" falls into, for bulk inserts and tariff
+    // changes; the month and year around that day start with the sums of their rows before it, so a batch appended to
+    // a long history only rescans its own readings
+    public void rebuild(Connection connection, long meterId, LocalDateTime from) throws SQLException {
+        long dayStart = AggregationPeriod.DAY.start(toEpochSecond(from));
+        long monthStart = AggregationPeriod.MONTH.start(dayStart);
+        long yearStart = AggregationPeriod.YEAR.start(dayStart);
+        try (var statement = connection.prepareStatement("delete from CONSUMPTION_ROLLUPS where ELECTRICITY_METER_ID = ? and PERIOD = ? and PERIOD_START >= ?")) {
+            for (var period : PERIODS) {
+                statement.setLong(1, meterId);
+                statement.setString(2, period.name());
+                statement.setTimestamp(3, Timestamp.valueOf(toDateTime(period.start(dayStart))));
+                statement.executeUpdate();
+            }
+        }
+        var days = sum(connection, meterId, AggregationPeriod.DAY, monthStart, dayStart);
+        var months = sum(connection, meterId, AggregationPeriod.MONTH, yearStart, monthStart);
+        var dayStartDateTime = toDateTime(dayStart);
+        var previous = neighbour(connection, """
+                select READINGDATE, READINGVALUE from READINGS where ELECTRICITY_METER_ID = ?
+                and READINGDATE <= ? and (READINGDATE < ? or (READINGDATE = ? and ID < ?))
+                order by READINGDATE desc, ID desc fetch first 1 rows only""", meterId, Long.MIN_VALUE, dayStartDateTime);
+        try (var accumulator = new Accumulator(connection);
+             var statement = connection.prepareStatement("""
+                     select READINGDATE, READINGVALUE from READINGS where ELECTRICITY_METER_ID = ? and READINGDATE >= ?
+                     order by READINGDATE, ID""")) {
+            statement.setLong(1, meterId);
+            statement.setTimestamp(2, Timestamp.valueOf(dayStartDateTime));
+            accumulator.startMeter(meterId, prices.get(connection, meterId));
+            accumulator.open(AggregationPeriod.MONTH, monthStart, days.consumption(), days.costs());
+            accumulator.open(AggregationPeriod.YEAR, yearStart, months.consumption() + days.consumption(), months.costs() + days.costs());
+            if (previous != null) accumulator.add(toEpochSecond(previous.readingDate()), previous.readingValue(), false);
+            try (var resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    accumulator.add(toEpochSecond(resultSet.getTimestamp(1).toLocalDateTime()), resultSet.getLong(2), true);
+                }
+            }
+        }
+    }
+
+    // the rows of one period kind within [fromEpochSecond, toEpochSecond) added up
+    private static Sum sum(Connection connection, long meterId, AggregationPeriod period, long fromEpochSecond, long toEpochSecond) throws SQLException {
+        try (var statement = connection.prepareStatement("""
+                select coalesce(sum(CONSUMPTION), 0), coalesce(sum(COSTS), 0) from CONSUMPTION_ROLLUPS
+                where ELECTRICITY_METER_ID = ? and PERIOD = ? and PERIOD_START >= ? and PERIOD_START < ?""")) {
+            statement.setLong(1, meterId);
+            statement.setString(2, period.name());
+            statement.setTimestamp(3, Timestamp.valueOf(toDateTime(fromEpochSecond)));
+            statement.setTimestamp(4, Timestamp.valueOf(toDateTime(toEpochSecond)));
+            try (var resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return new Sum(resultSet.getLong(1), resultSet.getDouble(2));
+            }
+        }
+    }
+
+    // recomputes the whole table in one pass over the readings
+    public void rebuild(Connection connection) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            statement.executeUpdate("delete from CONSUMPTION_ROLLUPS");
+        }
+        try (var accumulator = new Accumulator(connection);
+             var statement = connection.createStatement();
+             var resultSet = statement.executeQuery("""
+                     select ELECTRICITY_METER_ID, READINGDATE, READINGVALUE from READINGS
+                     where ELECTRICITY_METER_ID is not null and READINGDATE is not null
+                     order by ELECTRICITY_METER_ID, READINGDATE, ID""")) {
+            Long meterId = null;
+            while (resultSet.next()) {
+                if (meterId == null || resultSet.getLong(1) != meterId) {
+                    meterId = resultSet.getLong(1);
+                    accumulator.startMeter(meterId, prices.get(connection, meterId));
+                }
+                accumulator.add(toEpochSecond(resultSet.getTimestamp(2).toLocalDateTime()), resultSet.getLong(3), true);
+            }
+        }
+    }
+
+    private static void add(Connection connection, long meterId, long epochSecond, long consumption, double costs) throws SQLException {
+        if (consumption == 0 && costs == 0) return;
+        for (var period : PERIODS) {
+            var periodStart = Timestamp.valueOf(toDateTime(period.start(epochSecond)));
+            int updated;
+            try (var statement = connection.prepareStatement("""
+                    update CONSUMPTION_ROLLUPS set CONSUMPTION = CONSUMPTION + ?, COSTS = COSTS + ?
+                    where ELECTRICITY_METER_ID = ? and PERIOD = ? and PERIOD_START = ?""")) {
+                statement.setLong(1, consumption);
+                statement.setDouble(2, costs);
+                statement.setLong(3, meterId);
+                statement.setString(4, period.name());
+                statement.setTimestamp(5, periodStart);
+                updated = statement.executeUpdate();
+            }
+            if (updated == 0) {
+                try (var statement = insertStatement(connection)) {
+                    setInsertParameters(statement, meterId, period, periodStart, consumption, costs);
+                    statement.executeUpdate();
+                }
+            } else {
+                // rebuild writes no rows for periods without consumption either
+                try (var statement = connection.prepareStatement("""
+                        delete from CONSUMPTION_ROLLUPS
+                        where ELECTRICITY_METER_ID = ? and PERIOD = ? and PERIOD_START = ? and CONSUMPTION = 0""")) {
+                    statement.setLong(1, meterId);
+                    statement.setString(2, period.name());
+                    statement.setTimestamp(3, periodStart);
+                    statement.executeUpdate();
+                }
+            }
+        }
+    }
+
+    private static PreparedStatement insertStatement(Connection connection) throws SQLException {
+        return connection.prepareStatement("insert into CONSUMPTION_ROLLUPS (ELECTRICITY_METER_ID, PERIOD, PERIOD_START, CONSUMPTION, COSTS) values (?, ?, ?, ?, ?)");
+    }
+
+    private static void setInsertParameters(PreparedStatement statement, long meterId, AggregationPeriod period, Timestamp periodStart, long consumption, double costs) throws SQLException {
+        statement.setLong(1, meterId);
+        statement.setString(2, period.name());
+        statement.setTimestamp(3, periodStart);
+        statement.setLong(4, consumption);
+        statement.setDouble(5, costs);
+    }
+
+    // the plain date bound repeats the keyset condition in a form Derby can start the index scan at
+    private static Neighbour neighbour(Connection connection, String sql, long meterId, long readingId, LocalDateTime readingDate) throws SQLException {
+        try (var statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, meterId);
+            statement.setTimestamp(2, Timestamp.valueOf(readingDate));
+            statement.setTimestamp(3, Timestamp.valueOf(readingDate));
+            statement.setTimestamp(4, Timestamp.valueOf(readingDate));
+            statement.setLong(5, readingId);
+            try (var resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) return null;
+                return new Neighbour(resultSet.getTimestamp(1).toLocalDateTime(), resultSet.getLong(2));
+            }
+        }
+    }
+
+    private static long toEpochSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime toDateTime(long epochSecond) {
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
+    // sums the intervals of readings that arrive in date order and writes one row per finished period
+    private static class Accumulator implements AutoCloseable {
+
+        private final PreparedStatement insert;
+
+        private final long[] periodStarts = new long[PERIODS.size()];
+
+        private final long[] consumption = new long[PERIODS.size()];
+
+        private final double[] costs = new double[PERIODS.size()];
+
+        private final boolean[] open = new boolean[PERIODS.size()];
+
+        private long meterId;
+
+        private PriceSchedule.Cursor prices;
+
+        private boolean hasPrevious;
+
+        private long previousEpochSecond;
+
+        private long previousValue;
+
+        private int pending;
+
+        Accumulator(Connection connection) throws SQLException {
+            insert = insertStatement(connection);
+        }
+
+        void startMeter(long meterId, PriceSchedule prices) throws SQLException {
+            flushPeriods();
+            this.meterId = meterId;
+            this.prices = prices.cursor();
+            hasPrevious = false;
+        }
+
+        // continues a period whose earlier part is already summed up elsewhere
+        void open(AggregationPeriod period, long periodStart, long consumption, double costs) {
+            int index = PERIODS.indexOf(period);
+            open[index] = true;
+            periodStarts[index] = periodStart;
+            this.consumption[index] = consumption;
+            this.costs[index] = costs;
+        }
+
+        // a reading that is not booked only opens the interval to the next one
+        void add(long epochSecond, long value, boolean book) throws SQLException {
+            if (book && hasPrevious) {
+                long delta = value - previousValue;
+                double intervalCosts = prices.costs(previousEpochSecond, epochSecond, delta);
+                for (int i = 0; i < PERIODS.size(); i++) {
+                    long periodStart = PERIODS.get(i).start(epochSecond);
+                    if (open[i] && periodStarts[i] != periodStart) write(i);
+                    if (!open[i]) {
+                        open[i] = true;
+                        periodStarts[i] = periodStart;
+                        consumption[i] = 0;
+                        costs[i] = 0;
+                    }
+                    consumption[i] += delta;
+                    costs[i] += intervalCosts;
+                }
+            }
+            hasPrevious = true;
+            previousEpochSecond = epochSecond;
+            previousValue = value;
+        }
+
+        private void write(int index) throws SQLException {
+            open[index] = false;
+            if (consumption[index] == 0) return;
+            setInsertParameters(insert, meterId, PERIODS.get(index), Timestamp.valueOf(toDateTime(periodStarts[index])), consumption[index], costs[index]);
+            insert.addBatch();
+            if (++pending == BATCH_SIZE) {
+                insert.executeBatch();
+                pending = 0;
+            }
+        }
+
+        private void flushPeriods() throws SQLException {
+            for (int i = 0; i < PERIODS.size(); i++) {
+                if (open[i]) write(i);
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                flushPeriods();
+                if (pending > 0) insert.executeBatch();
+            } finally {
+                insert.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.dao;
+
+import de.schipplock.apps.stromzettel.metrics.JmxMetrics;
+import de.schipplock.apps.stromzettel.metrics.Metrics;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Persistence;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.Statistics;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.function.Function;
+
+import static java.lang.String.format;
+
+// one EntityManagerFactory for the whole application, every unit of work gets its own short-lived EntityManager
+public class Database {
+
+    private final EntityManagerFactory emf;
+
+    private final JmxMetrics metrics;
+
+    private final PriceSchedules priceSchedules = new PriceSchedules();
+
+    public Database() {
+        this(Map.of());
+    }
+
+    public Database(Map<String, Object> properties) {
+        emf = Persistence.createEntityManagerFactory("jpaPU", properties);
+        try {
+            migrate();
+        } catch (SQLException | RuntimeException ex) {
+            emf.close();
+            throw new IllegalStateException(format("migrating the database failed: %s", ex.getMessage()), ex);
+        }
+        metrics = new JmxMetrics(getStatistics());
+        metrics.register();
+    }
+
+    // hibernate does not touch the schema, so this has to happen before the first query
+    private void migrate() throws SQLException {
+        var connectionProvider = emf.unwrap(SessionFactoryImplementor.class).getServiceRegistry().getService(ConnectionProvider.class);
+        var connection = connectionProvider.getConnection();
+        try {
+            new SchemaMigrator().migrate(connection);
+        } finally {
+            connectionProvider.closeConnection(connection);
+        }
+    }
+
+    public EntityManagerFactory getEntityManagerFactory() {
+        return emf;
+    }
+
+    public <T> T read(Function<EntityManager, T> work) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return work.apply(em);
+        } finally {
+            em.close();
+        }
+    }
+
+    public <T> T inTransaction(Function<EntityManager, T> work) {
+        EntityManager em = emf.createEntityManager();
+        var transaction = em.getTransaction();
+        try {
+            transaction.begin();
+            T result = work.apply(em);
+            long start = System.nanoTime();
+            transaction.commit();
+            Metrics.record("transaction.commit", System.nanoTime() - start);
+            return result;
+        } catch (RuntimeException ex) {
+            if (transaction.isActive()) {
+                long start = System.nanoTime();
+                transaction.rollback();
+                Metrics.record("transaction.rollback", System.nanoTime() - start);
+            }
+            throw ex;
+        } finally {
+            em.close();
+        }
+    }
+
+    public Statistics getStatistics() {
+        return emf.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    public PriceSchedules getPriceSchedules() {
+        return priceSchedules;
+    }
+
+    public JmxMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void close() {
+        metrics.unregister();
+        emf.close();
+
+        try {
+            DriverManager.getConnection(
+                    "jdbc:derby:;shutdown=true");
+        } catch (SQLException ex) {
+            if (ex.getErrorCode() == 50000) {
+                // 50000 means = shutdown was a success, yea right
+                return;
+            }
+            throw new RuntimeException(ex);
+        }
+    }
+}
@@ -15,35 +15,82 @@
  */
 package de.schipplock.apps.stromzettel.dao;
 
+import de.schipplock.apps.stromzettel.metrics.Metrics;
 import de.schipplock.apps.stromzettel.model.ElectricityMeter;
-import jakarta.persistence.EntityManager;
-import jakarta.persistence.Persistence;
+import de.schipplock.apps.stromzettel.model.Tariff;
+import org.hibernate.Session;
+import org.hibernate.jpa.HibernateHints;
 
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 
+import static java.lang.String.format;
+
 public class ElectricityMeterDAO {
 
-    public final EntityManager em;
+    private final Database database;
+
+    private final ConsumptionRollups rollups;
 
-    public ElectricityMeterDAO() {
-        em = Persistence.createEntityManagerFactory("jpaPU").createEntityManager();
+    public ElectricityMeterDAO(Database database) {
+        this.database = database;
+        this.rollups = new ConsumptionRollups(database.getPriceSchedules());
     }
 
     public List<ElectricityMeter> findAll() {
-        return em.createQuery("from ElectricityMeter", ElectricityMeter.class).getResultList();
+        return Metrics.time("meters.findAll", () -> database.read(em -> em.createQuery("from ElectricityMeter", ElectricityMeter.class)
+                .setHint(HibernateHints.HINT_CACHEABLE, true)
+                .getResultList()));
     }
 
     public ElectricityMeter merge(ElectricityMeter electricityMeter) {
-        ElectricityMeter mergedElectricityMeter;
-        em.getTransaction().begin();
-        mergedElectricityMeter = em.merge(electricityMeter);
-        em.getTransaction().commit();
-        return mergedElectricityMeter;
+        var priceSchedules = database.getPriceSchedules();
+        try {
+            return Metrics.time("meters.merge", () -> database.inTransaction(em -> {
+                // only name and price are copied onto the managed meter, cascading the readings a detached meter still
+                // holds would resurrect deleted ones and revert edits
+                if (electricityMeter.getId() == null) {
+                    var created = new ElectricityMeter(electricityMeter.getName(), electricityMeter.getKwhPrice());
+                    em.persist(created);
+                    // a new meter starts with one tariff that covers its whole history
+                    em.persist(new Tariff(created, Tariff.BEGINNING, created.getKwhPrice()));
+                    return created;
+                }
+                var merged = em.find(ElectricityMeter.class, electricityMeter.getId());
+                if (merged == null) throw new IllegalArgumentException(format("meter %d does not exist anymore", electricityMeter.getId()));
+                double previousKwhPrice = merged.getKwhPrice();
+                merged.setName(electricityMeter.getName());
+                merged.setKwhPrice(electricityMeter.getKwhPrice());
+                if (Double.compare(previousKwhPrice, merged.getKwhPrice()) != 0) {
+                    // a new price applies from now on instead of rewriting the costs of the past
+                    var validFrom = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+                    em.persist(new Tariff(merged, validFrom, merged.getKwhPrice()));
+                    em.flush();
+                    priceSchedules.invalidate(merged.getId());
+                    em.unwrap(Session.class).doWork(connection -> rollups.rebuild(connection, merged.getId(), validFrom));
+                }
+                return merged;
+            }));
+        } finally {
+            // also drops a schedule that was loaded inside a transaction that rolled back
+            if (electricityMeter.getId() != null) priceSchedules.invalidate(electricityMeter.getId());
+        }
     }
 
     public void delete(ElectricityMeter electricityMeter) {
-        em.getTransaction().begin();
-        em.remove(electricityMeter);
-        em.getTransaction().commit();
+        Metrics.time("meters.delete", () -> database.inTransaction(em -> {
+            em.unwrap(Session.class).doWork(connection -> rollups.deleteMeter(connection, electricityMeter.getId()));
+            em.createQuery("delete from Tariff t where t.electricityMeter.id = :id")
+                    .setParameter("id", electricityMeter.getId())
+                    .executeUpdate();
+            // one statement for the history instead of loading and cascading over every reading
+            em.createQuery("delete from Reading r where r.electricityMeter.id = :id")
+                    .setParameter("id", electricityMeter.getId())
+                    .executeUpdate();
+            em.remove(em.getReference(ElectricityMeter.class, electricityMeter.getId()));
+            return null;
+        }));
+        database.getPriceSchedules().invalidate(electricityMeter.getId());
     }
 }
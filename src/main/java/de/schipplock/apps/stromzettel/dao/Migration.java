@@ -0,0 +1,36 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// one step of the schema history, never change a migration once it has been released
+public interface Migration {
+
+    int getVersion();
+
+    String getDescription();
+
+    long getChecksum();
+
+    // whether the checksum SCHEMA_VERSION recorded for this version belongs to this migration
+    default boolean matches(long checksum) {
+        return checksum == getChecksum();
+    }
+
+    void migrate(Connection connection) throws SQLException;
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.dao;
+
+import de.schipplock.apps.stromzettel.analytics.ConsumptionSeries;
+import de.schipplock.apps.stromzettel.analytics.PriceSchedule;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// the price schedule of every meter, read from TARIFFS on first use and dropped whenever the tariffs of the meter change
+public class PriceSchedules implements ConsumptionRollups.Prices {
+
+    private static final String COLUMNS = "VALIDFROM, KWHPRICE, OFFPEAKSTART, OFFPEAKEND, OFFPEAKKWHPRICE";
+
+    private final Map<Long, PriceSchedule> schedules = new ConcurrentHashMap<>();
+
+    @Override
+    public PriceSchedule get(Connection connection, long meterId) throws SQLException {
+        var schedule = schedules.get(meterId);
+        if (schedule == null) {
+            schedule = load(connection, meterId);
+            schedules.put(meterId, schedule);
+        }
+        return schedule;
+    }
+
+    public void invalidate(long meterId) {
+        schedules.remove(meterId);
+    }
+
+    private static PriceSchedule load(Connection connection, long meterId) throws SQLException {
+        try (var statement = connection.prepareStatement("select " + COLUMNS + " from TARIFFS where ELECTRICITY_METER_ID = ? order by VALIDFROM, ID")) {
+            statement.setLong(1, meterId);
+            try (var resultSet = statement.executeQuery()) {
+                var builder = new PriceSchedule.Builder();
+                while (resultSet.next()) add(builder, resultSet, 1);
+                return builder.build();
+            }
+        }
+    }
+
+    // one query for every meter, for jobs that walk all readings
+    public static Map<Long, PriceSchedule> loadAll(Connection connection) throws SQLException {
+        Map<Long, PriceSchedule.Builder> builders = new HashMap<>();
+        try (var statement = connection.createStatement();
+             var resultSet = statement.executeQuery("select ELECTRICITY_METER_ID, " + COLUMNS + " from TARIFFS order by ELECTRICITY_METER_ID, VALIDFROM, ID")) {
+            while (resultSet.next()) {
+                add(builders.computeIfAbsent(resultSet.getLong(1), meterId -> new PriceSchedule.Builder()), resultSet, 2);
+            }
+        }
+        Map<Long, PriceSchedule> schedules = new HashMap<>();
+        builders.forEach((meterId, builder) -> schedules.put(meterId, builder.build()));
+        return schedules;
+    }
+
+    private static void add(PriceSchedule.Builder builder, ResultSet resultSet, int column) throws SQLException {
+        long validFrom = ConsumptionSeries.toEpochSecond(resultSet.getTimestamp(column).toLocalDateTime());
+        double kwhPrice = resultSet.getDouble(column + 1);
+        var offPeakStart = resultSet.getTime(column + 2);
+        var offPeakEnd = resultSet.getTime(column + 3);
+        double offPeakKwhPrice = resultSet.getDouble(column + 4);
+        if (offPeakStart == null || offPeakEnd == null || resultSet.wasNull()) {
+            builder.add(validFrom, kwhPrice);
+        } else {
+            builder.add(validFrom, kwhPrice, offPeakStart.toLocalTime().toSecondOfDay(), offPeakEnd.toLocalTime().toSecondOfDay(), offPeakKwhPrice);
+        }
+    }
+}
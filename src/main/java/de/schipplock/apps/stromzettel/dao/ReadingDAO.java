@@ -0,0 +1,259 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.dao;
+
+import de.schipplock.apps.stromzettel.analytics.ConsumptionSeries;
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import de.schipplock.apps.stromzettel.model.Reading;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.hibernate.jpa.HibernateHints;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static java.lang.String.format;
+
+public class ReadingDAO {
+
+    public static final int BATCH_SIZE = 50;
+
+    // up to this many readings in a value range are cheaper to sort than to skip over while walking the history
+    private static final int VALUE_INDEX_ROWS = 2_000;
+
+    private final Database database;
+
+    private final ConsumptionRollups rollups;
+
+    public ReadingDAO(Database database) {
+        this.database = database;
+        this.rollups = new ConsumptionRollups(database.getPriceSchedules());
+    }
+
+    // inserts just the new row instead of merging the meter together with its whole history
+    public Reading persist(Reading reading) {
+        database.inTransaction(em -> {
+            em.persist(reading);
+            em.flush();
+            em.unwrap(Session.class).doWork(connection -> rollups.readingAdded(connection, reading.getElectricityMeter().getId(),
+                    reading.getId(), reading.getReadingDate(), reading.getReadingValue()));
+            return null;
+        });
+        return reading;
+    }
+
+    // the EntityManager gets cleared after every JDBC batch to keep the heap flat, the rollups of every meter are
+    // recomputed once from the oldest new reading on instead of being adjusted row by row
+    public void persistAll(List<Reading> readings) {
+        database.inTransaction(em -> {
+            Map<Long, LocalDateTime> oldestReadings = new HashMap<>();
+            for (int i = 0; i < readings.size(); i++) {
+                var reading = readings.get(i);
+                em.persist(reading);
+                oldestReadings.merge(reading.getElectricityMeter().getId(), reading.getReadingDate(), (a, b) -> a.isBefore(b) ? a : b);
+                if ((i + 1) % BATCH_SIZE == 0) {
+                    em.flush();
+                    em.clear();
+                }
+            }
+            em.flush();
+            em.unwrap(Session.class).doWork(connection -> {
+                for (var oldestReading : oldestReadings.entrySet()) {
+                    rollups.rebuild(connection, oldestReading.getKey(), oldestReading.getValue());
+                }
+            });
+            return null;
+        });
+    }
+
+    public Reading merge(Reading reading) {
+        return database.inTransaction(em -> {
+            var stored = em.find(Reading.class, reading.getId());
+            long meterId = stored.getElectricityMeter().getId();
+            // has to see the row at its old position, before the change gets flushed
+            em.unwrap(Session.class).doWork(connection -> rollups.readingRemoved(connection, meterId, stored.getId(), stored.getReadingDate(), stored.getReadingValue()));
+            var merged = em.merge(reading);
+            em.flush();
+            em.unwrap(Session.class).doWork(connection -> rollups.readingAdded(connection, merged.getElectricityMeter().getId(),
+                    merged.getId(), merged.getReadingDate(), merged.getReadingValue()));
+            return merged;
+        });
+    }
+
+    public void delete(Reading reading) {
+        database.inTransaction(em -> {
+            var stored = em.find(Reading.class, reading.getId());
+            if (stored == null) return null;
+            long meterId = stored.getElectricityMeter().getId();
+            em.remove(stored);
+            em.flush();
+            em.unwrap(Session.class).doWork(connection -> rollups.readingRemoved(connection, meterId, stored.getId(), stored.getReadingDate(), stored.getReadingValue()));
+            return null;
+        });
+    }
+
+    // the reading itself when there is none before it, same as ElectricityMeter.getPreviousReading; always asks the
+    // database, the readings a detached meter may hold are not kept up to date
+    public Reading findPrevious(Reading reading) {
+        // served by the (electricity_meter_id, readingDate) index instead of loading the whole history
+        var previousReadings = findPage(reading.getElectricityMeter(), reading, 1);
+        return previousReadings.isEmpty() ? reading : previousReadings.get(0);
+    }
+
+    // newest first; pass the last reading of the previous page as "after" (or null for the first page)
+    public List<Reading> findPage(ElectricityMeter meter, Reading after, int maxResults) {
+        return findPage(meter, after, maxResults, ReadingFilter.NONE);
+    }
+
+    public List<Reading> findPage(ElectricityMeter meter, Reading after, int maxResults, ReadingFilter filter) {
+        return database.read(em -> findPage(em, meter, after, maxResults, filter));
+    }
+
+    private static List<Reading> findPage(EntityManager em, ElectricityMeter meter, Reading after, int maxResults, ReadingFilter filter) {
+        if (filter.getMinValue() != null || filter.getMaxValue() != null) {
+            return findPageByValue(em, meter, after, maxResults, filter);
+        }
+        var jpql = new StringBuilder("from Reading r where r.electricityMeter = :meter");
+        if (after != null) {
+            // keyset paging, so deep pages cost the same as the first one; the plain date bound is what Derby starts the index scan at
+            jpql.append(" and r.readingDate <= :date and (r.readingDate < :date or (r.readingDate = :date and r.id < :id))");
+        }
+        if (filter.getFrom() != null) jpql.append(" and r.readingDate >= :from");
+        if (filter.getTo() != null) jpql.append(" and r.readingDate < :to");
+        jpql.append(" order by r.readingDate desc, r.id desc");
+
+        var query = em.createQuery(jpql.toString(), Reading.class)
+                .setParameter("meter", meter)
+                .setMaxResults(maxResults)
+                // every keystroke in the filter would leave a query cache entry behind that nobody asks for again
+                .setHint(HibernateHints.HINT_CACHEABLE, filter.isEmpty());
+        if (after != null) {
+            query.setParameter("date", after.getReadingDate());
+            query.setParameter("id", after.getId());
+        }
+        if (filter.getFrom() != null) query.setParameter("from", filter.getFrom());
+        if (filter.getTo() != null) query.setParameter("to", filter.getTo());
+        return query.getResultList();
+    }
+
+    // Derby guesses the same selectivity for every range and falls back to the foreign key index once the value is
+    // filtered as well, so the index is picked here: a value range with few readings is read from
+    // IDX_READINGS_METER_VALUE and sorted, a wide one is cheaper to find by walking the readings newest-first
+    private static List<Reading> findPageByValue(EntityManager em, ElectricityMeter meter, Reading after, int maxResults, ReadingFilter filter) {
+        var valueRange = new StringBuilder();
+        List<Object> valueParameters = new ArrayList<>();
+        if (filter.getMinValue() != null) {
+            valueRange.append(" and READINGVALUE >= ?");
+            valueParameters.add(filter.getMinValue());
+        }
+        if (filter.getMaxValue() != null) {
+            valueRange.append(" and READINGVALUE <= ?");
+            valueParameters.add(filter.getMaxValue());
+        }
+        var where = new StringBuilder("where ELECTRICITY_METER_ID = ?").append(valueRange);
+        List<Object> parameters = new ArrayList<>(List.of(meter.getId()));
+        parameters.addAll(valueParameters);
+        if (after != null) {
+            var date = Timestamp.valueOf(after.getReadingDate());
+            where.append(" and READINGDATE <= ? and (READINGDATE < ? or (READINGDATE = ? and ID < ?))");
+            parameters.addAll(List.of(date, date, date, after.getId()));
+        }
+        if (filter.getFrom() != null) {
+            where.append(" and READINGDATE >= ?");
+            parameters.add(Timestamp.valueOf(filter.getFrom()));
+        }
+        if (filter.getTo() != null) {
+            where.append(" and READINGDATE < ?");
+            parameters.add(Timestamp.valueOf(filter.getTo()));
+        }
+
+        var session = em.unwrap(Session.class);
+        // counted in the index alone and only up to the limit, so a wide range costs no more than a narrow one
+        int valueRangeRows = session.doReturningWork(connection -> {
+            try (var statement = connection.prepareStatement("select READINGVALUE from READINGS --DERBY-PROPERTIES index=IDX_READINGS_METER_VALUE\nwhere ELECTRICITY_METER_ID = ?" + valueRange)) {
+                statement.setMaxRows(VALUE_INDEX_ROWS + 1);
+                statement.setLong(1, meter.getId());
+                for (int i = 0; i < valueParameters.size(); i++) statement.setObject(i + 2, valueParameters.get(i));
+                int rows = 0;
+                try (var resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) rows++;
+                }
+                return rows;
+            }
+        });
+        var index = valueRangeRows <= VALUE_INDEX_ROWS ? "IDX_READINGS_METER_VALUE" : "IDX_READINGS_METER_DATE_DESC";
+        // the optimizer override is a comment that has to end with a line break
+        var query = session.createNativeQuery(format("select * from READINGS --DERBY-PROPERTIES index=%s%n%s order by READINGDATE desc, ID desc", index, where), Reading.class)
+                .setMaxResults(maxResults);
+        for (int i = 0; i < parameters.size(); i++) query.setParameter(i + 1, parameters.get(i));
+        return query.getResultList();
+    }
+
+    // streams only date and value of every reading into primitive arrays, no entities end up in the persistence context
+    public ConsumptionSeries loadSeries(ElectricityMeter meter) {
+        return database.read(em -> loadSeries(em, meter));
+    }
+
+    private static ConsumptionSeries loadSeries(EntityManager em, ElectricityMeter meter) {
+        var builder = new ConsumptionSeries.Builder();
+        try (Stream<Object[]> rows = em.createQuery("select r.readingDate, r.readingValue from Reading r where r.electricityMeter = :meter order by r.readingDate, r.id", Object[].class)
+                .setParameter("meter", meter)
+                .getResultStream()) {
+            rows.forEach(row -> builder.add(ConsumptionSeries.toEpochSecond((LocalDateTime) row[0]), (Long) row[1]));
+        }
+        return builder.build();
+    }
+
+    // series of every meter for reports over [from, to), starting with the last reading before "from" so the first interval counts
+    public Map<Long, ConsumptionSeries> loadAllSeries(LocalDateTime from, LocalDateTime to) {
+        return database.read(em -> loadAllSeries(em, from, to));
+    }
+
+    private static Map<Long, ConsumptionSeries> loadAllSeries(EntityManager em, LocalDateTime from, LocalDateTime to) {
+        Map<Long, ConsumptionSeries.Builder> builders = new HashMap<>();
+        // the reading that opens the first interval of every meter comes first, looked up newest-first per meter; a
+        // correlated subquery per row would have Derby scan the history before "from" again for every reading in the range
+        for (var meterId : em.createQuery("select m.id from ElectricityMeter m", Long.class).getResultList()) {
+            em.createQuery("""
+                            select r.readingDate, r.readingValue from Reading r where r.electricityMeter.id = :id and r.readingDate < :from
+                            order by r.readingDate desc, r.id desc""", Object[].class)
+                    .setParameter("id", meterId)
+                    .setParameter("from", from)
+                    .setMaxResults(1)
+                    .getResultList()
+                    .forEach(row -> builders.computeIfAbsent(meterId, id -> new ConsumptionSeries.Builder())
+                            .add(ConsumptionSeries.toEpochSecond((LocalDateTime) row[0]), (Long) row[1]));
+        }
+        try (Stream<Object[]> rows = em.createQuery("""
+                        select r.electricityMeter.id, r.readingDate, r.readingValue from Reading r
+                        where r.readingDate >= :from and r.readingDate < :to
+                        order by r.electricityMeter.id, r.readingDate, r.id""", Object[].class)
+                .setParameter("from", from)
+                .setParameter("to", to)
+                .getResultStream()) {
+            rows.forEach(row -> builders.computeIfAbsent((Long) row[0], meterId -> new ConsumptionSeries.Builder())
+                    .add(ConsumptionSeries.toEpochSecond((LocalDateTime) row[1]), (Long) row[2]));
+        }
+        Map<Long, ConsumptionSeries> series = new HashMap<>();
+        builders.forEach((meterId, builder) -> series.put(meterId, builder.build()));
+        return series;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.dao;
+
+import de.schipplock.apps.stromzettel.model.Reading;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+// narrows the readings of a meter to [from, to) and [minValue, maxValue], every bound is optional
+public class ReadingFilter {
+
+    public static final ReadingFilter NONE = new ReadingFilter(null, null, null, null);
+
+    private final LocalDateTime from;
+
+    private final LocalDateTime to;
+
+    private final Long minValue;
+
+    private final Long maxValue;
+
+    public ReadingFilter(LocalDateTime from, LocalDateTime to, Long minValue, Long maxValue) {
+        this.from = from;
+        this.to = to;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public Long getMinValue() {
+        return minValue;
+    }
+
+    public Long getMaxValue() {
+        return maxValue;
+    }
+
+    public boolean isEmpty() {
+        return from == null && to == null && minValue == null && maxValue == null;
+    }
+
+    public boolean matches(Reading reading) {
+        var date = reading.getReadingDate();
+        long value = reading.getReadingValue();
+        return (from == null || !date.isBefore(from)) && (to == null || date.isBefore(to))
+                && (minValue == null || value >= minValue) && (maxValue == null || value <= maxValue);
+    }
+
+    // true when everything this filter lets through passes the other one as well, the readings already loaded for
+    // the other one can then be narrowed down in memory
+    public boolean narrows(ReadingFilter other) {
+        return (other.from == null || from != null && !from.isBefore(other.from))
+                && (other.to == null || to != null && !to.isAfter(other.to))
+                && (other.minValue == null || minValue != null && minValue >= other.minValue)
+                && (other.maxValue == null || maxValue != null && maxValue <= other.maxValue);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ReadingFilter that = (ReadingFilter) o;
+        return Objects.equals(from, that.from) && Objects.equals(to, that.to)
+                && Objects.equals(minValue, that.minValue) && Objects.equals(maxValue, that.maxValue);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(from, to, minValue, maxValue);
+    }
+}
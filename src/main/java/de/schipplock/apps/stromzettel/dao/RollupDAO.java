@@ -0,0 +1,74 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.dao;
+
+import de.schipplock.apps.stromzettel.analytics.AggregationPeriod;
+import de.schipplock.apps.stromzettel.analytics.PeriodAggregate;
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import org.hibernate.Session;
+
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+// reads the persisted rollups, so reports over years of readings no longer have to walk the readings themselves
+public class RollupDAO {
+
+    private final Database database;
+
+    public RollupDAO(Database database) {
+        this.database = database;
+    }
+
+    public PeriodAggregate findRollups(ElectricityMeter meter, AggregationPeriod period) {
+        if (!ConsumptionRollups.PERIODS.contains(period)) {
+            throw new IllegalArgumentException(period + " is not rolled up");
+        }
+        return database.read(em -> em.unwrap(Session.class).doReturningWork(connection -> {
+            try (var statement = connection.prepareStatement("""
+                    select PERIOD_START, CONSUMPTION, COSTS from CONSUMPTION_ROLLUPS
+                    where ELECTRICITY_METER_ID = ? and PERIOD = ? order by PERIOD_START""")) {
+                statement.setLong(1, meter.getId());
+                statement.setString(2, period.name());
+                try (var resultSet = statement.executeQuery()) {
+                    long[] periodStarts = new long[16];
+                    long[] consumption = new long[16];
+                    double[] costs = new double[16];
+                    int size = 0;
+                    while (resultSet.next()) {
+                        if (size == periodStarts.length) {
+                            periodStarts = Arrays.copyOf(periodStarts, size * 2);
+                            consumption = Arrays.copyOf(consumption, size * 2);
+                            costs = Arrays.copyOf(costs, size * 2);
+                        }
+                        periodStarts[size] = resultSet.getTimestamp(1).toLocalDateTime().toEpochSecond(ZoneOffset.UTC);
+                        consumption[size] = resultSet.getLong(2);
+                        costs[size] = resultSet.getDouble(3);
+                        size++;
+                    }
+                    return new PeriodAggregate(period, periodStarts, consumption, costs, size);
+                }
+            }
+        }));
+    }
+
+    // throws the rollups away and recomputes them from the readings
+    public void rebuild() {
+        database.inTransaction(em -> {
+            em.unwrap(Session.class).doWork(connection -> new ConsumptionRollups(database.getPriceSchedules()).rebuild(connection));
+            return null;
+        });
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+// brings the schema up to date by running every migration newer than the version stored in SCHEMA_VERSION
+public class SchemaMigrator {
+
+    // append only, in version order
+    private static final List<Migration> MIGRATIONS = List.of(
+            new SqlMigration(1, "create_schema"),
+            new SqlMigration(2, "index_readings_by_meter_and_date"),
+            new SequenceMigration(),
+            new ConsumptionRollupMigration(),
+            new SqlMigration(5, "create_tariffs"),
+            new SqlMigration(6, "index_readings_by_meter_date_and_id"),
+            new SqlMigration(7, "index_readings_by_meter_and_value")
+    );
+
+    private final List<Migration> migrations;
+
+    public SchemaMigrator() {
+        this(MIGRATIONS);
+    }
+
+    public SchemaMigrator(List<Migration> migrations) {
+        this.migrations = migrations;
+    }
+
+    public int getLatestVersion() {
+        return migrations.get(migrations.size() - 1).getVersion();
+    }
+
+    // returns the number of migrations that had to run, each one commits on its own
+    public int migrate(Connection connection) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            if (!tableExists(connection, "SCHEMA_VERSION")) {
+                createSchemaVersionTable(connection);
+            }
+            var checksums = appliedChecksums(connection);
+            int applied = 0;
+            for (var migration : migrations) {
+                Long checksum = checksums.get(migration.getVersion());
+                if (checksum != null) {
+                    if (!migration.matches(checksum)) {
+                        throw new IllegalStateException(format("migration %d (%s) has been changed after it was applied",
+                                migration.getVersion(), migration.getDescription()));
+                    }
+                    continue;
+                }
+                migration.migrate(connection);
+                record(connection, migration, false);
+                connection.commit();
+                applied++;
+            }
+            return applied;
+        } catch (SQLException | RuntimeException ex) {
+            connection.rollback();
+            throw ex;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    // databases from before versioned migrations already have the tables that hbm2ddl created, those versions count as applied
+    private void createSchemaVersionTable(Connection connection) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            statement.executeUpdate("""
+                    create table SCHEMA_VERSION (
+                        VERSION integer not null primary key,
+                        DESCRIPTION varchar(200) not null,
+                        CHECKSUM bigint not null,
+                        INSTALLED_ON timestamp not null,
+                        BASELINE boolean not null
+                    )""");
+        }
+        if (tableExists(connection, "ELECTRICITY_METERS")) {
+            record(connection, migrations.get(0), true);
+            if (indexExists(connection, "IDX_READINGS_METER_DATE")) {
+                record(connection, migrations.get(1), true);
+            }
+        }
+        connection.commit();
+    }
+
+    private static Map<Integer, Long> appliedChecksums(Connection connection) throws SQLException {
+        Map<Integer, Long> checksums = new HashMap<>();
+        try (var statement = connection.createStatement();
+             var resultSet = statement.executeQuery("select VERSION, CHECKSUM from SCHEMA_VERSION")) {
+            while (resultSet.next()) {
+                checksums.put(resultSet.getInt(1), resultSet.getLong(2));
+            }
+        }
+        return checksums;
+    }
+
+    private static void record(Connection connection, Migration migration, boolean baseline) throws SQLException {
+        try (var statement = connection.prepareStatement("insert into SCHEMA_VERSION (VERSION, DESCRIPTION, CHECKSUM, INSTALLED_ON, BASELINE) values (?, ?, ?, ?, ?)")) {
+            statement.setInt(1, migration.getVersion());
+            statement.setString(2, migration.getDescription());
+            statement.setLong(3, migration.getChecksum());
+            statement.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now()));
+            statement.setBoolean(5, baseline);
+            statement.executeUpdate();
+        }
+    }
+
+    private static boolean tableExists(Connection connection, String tableName) throws SQLException {
+        try (var statement = connection.prepareStatement("""
+                select 1 from SYS.SYSTABLES t join SYS.SYSSCHEMAS s on t.SCHEMAID = s.SCHEMAID
+                where s.SCHEMANAME = CURRENT SCHEMA and t.TABLENAME = ?""")) {
+            statement.setString(1, tableName);
+            try (var resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    private static boolean indexExists(Connection connection, String indexName) throws SQLException {
+        try (var statement = connection.prepareStatement("""
+                select 1 from SYS.SYSCONGLOMERATES c join SYS.SYSSCHEMAS s on c.SCHEMAID = s.SCHEMAID
+                where s.SCHEMANAME = CURRENT SCHEMA and c.CONGLOMERATENAME = ?""")) {
+            statement.setString(1, indexName);
+            try (var resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+// databases created before ids were allocated in pools still have sequences that count up by one
+public class SequenceMigration implements Migration {
+
+    // must match the allocationSize of the entity sequence generators
+    public static final int ALLOCATION_SIZE = 50;
+
+    private static final Map<String, String> SEQUENCE_TABLES = Map.of(
+            "ELECTRICITY_METER_SEQ", "ELECTRICITY_METERS",
+            "READINGS_SEQUENCE", "READINGS"
+    );
+
+    @Override
+    public int getVersion() {
+        return 3;
+    }
+
+    @Override
+    public String getDescription() {
+        return "allocate ids in pools";
+    }
+
+    @Override
+    public long getChecksum() {
+        return ALLOCATION_SIZE;
+    }
+
+    @Override
+    public void migrate(Connection connection) throws SQLException {
+        for (var entry : SEQUENCE_TABLES.entrySet()) {
+            migrate(connection, entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void migrate(Connection connection, String sequenceName, String tableName) throws SQLException {
+        Long increment = null;
+        try (var statement = connection.prepareStatement("""
+                select s.INCREMENT from SYS.SYSSEQUENCES s join SYS.SYSSCHEMAS c on s.SCHEMAID = c.SCHEMAID
+                where c.SCHEMANAME = CURRENT SCHEMA and s.SEQUENCENAME = ?""")) {
+            statement.setString(1, sequenceName);
+            try (var resultSet = statement.executeQuery()) {
+                if (resultSet.next()) increment = resultSet.getLong(1);
+            }
+        }
+        if (increment == null || increment == ALLOCATION_SIZE) return;
+
+        // pooled-lo hands out [next value, next value + allocation size), so restart behind every id in use
+        long start = 1;
+        try (var statement = connection.createStatement();
+             var resultSet = statement.executeQuery(format("select max(id) from %s", tableName))) {
+            if (resultSet.next()) start = resultSet.getLong(1) + 1;
+        }
+        try (var statement = connection.prepareStatement("values SYSCS_UTIL.SYSCS_PEEK_AT_SEQUENCE(CURRENT SCHEMA, ?)")) {
+            statement.setString(1, sequenceName);
+            try (var resultSet = statement.executeQuery()) {
+                if (resultSet.next()) start = Math.max(start, resultSet.getLong(1));
+            }
+        }
+
+        try (var statement = connection.createStatement()) {
+            statement.executeUpdate(format("drop sequence %s restrict", sequenceName));
+            statement.executeUpdate(format("create sequence %s start with %d increment by %d", sequenceName, start, ALLOCATION_SIZE));
+        }
+    }
+}
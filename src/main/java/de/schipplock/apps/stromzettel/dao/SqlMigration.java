@@ -0,0 +1,78 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.dao;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import static java.lang.String.format;
+
+// runs the statements of a db/migration/V<version>__<name>.sql resource, separated by semicolons
+public class SqlMigration implements Migration {
+
+    private final int version;
+
+    private final String name;
+
+    private final String script;
+
+    public SqlMigration(int version, String name) {
+        this.version = version;
+        this.name = name;
+        this.script = load(format("db/migration/V%d__%s.sql", version, name));
+    }
+
+    private static String load(String resource) {
+        try (var in = SqlMigration.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) throw new IllegalStateException(format("migration %s is missing", resource));
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public int getVersion() {
+        return version;
+    }
+
+    @Override
+    public String getDescription() {
+        return name.replace('_', ' ');
+    }
+
+    @Override
+    public long getChecksum() {
+        var crc = new CRC32();
+        crc.update(script.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    @Override
+    public void migrate(Connection connection) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            for (String sql : script.split(";")) {
+                sql = sql.lines().filter(line -> !line.strip().startsWith("--")).collect(Collectors.joining("\n"));
+                if (!sql.isBlank()) statement.executeUpdate(sql);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.dao;
+
+import de.schipplock.apps.stromzettel.analytics.PriceSchedule;
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import de.schipplock.apps.stromzettel.model.Tariff;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+// every change to the tariffs of a meter recomputes its rollups from the tariff on and drops its cached price schedule
+public class TariffDAO {
+
+    private final Database database;
+
+    private final ConsumptionRollups rollups;
+
+    public TariffDAO(Database database) {
+        this.database = database;
+        this.rollups = new ConsumptionRollups(database.getPriceSchedules());
+    }
+
+    public List<Tariff> findAll(ElectricityMeter meter) {
+        return database.read(em -> em.createQuery("from Tariff t where t.electricityMeter.id = :id order by t.validFrom", Tariff.class)
+                .setParameter("id", meter.getId())
+                .getResultList());
+    }
+
+    public PriceSchedule loadPriceSchedule(ElectricityMeter meter) {
+        return database.read(em -> em.unwrap(Session.class).doReturningWork(connection -> database.getPriceSchedules().get(connection, meter.getId())));
+    }
+
+    // for reports over every meter, bypasses the cache because it reads all tariffs anyway
+    public Map<Long, PriceSchedule> loadAllPriceSchedules() {
+        return database.read(em -> em.unwrap(Session.class).doReturningWork(PriceSchedules::loadAll));
+    }
+
+    // returns the price the meter has now, which is what the meter dialogs show
+    public double persist(Tariff tariff) {
+        long meterId = tariff.getElectricityMeter().getId();
+        try {
+            return database.inTransaction(em -> {
+                em.persist(tariff);
+                return tariffsChanged(em, meterId, tariff.getValidFrom());
+            });
+        } finally {
+            database.getPriceSchedules().invalidate(meterId);
+        }
+    }
+
+    public double delete(Tariff tariff) {
+        long meterId = tariff.getElectricityMeter().getId();
+        try {
+            return database.inTransaction(em -> {
+                long tariffs = em.createQuery("select count(t) from Tariff t where t.electricityMeter.id = :id", Long.class)
+                        .setParameter("id", meterId)
+                        .getSingleResult();
+                if (tariffs <= 1) throw new IllegalStateException("the last tariff of a meter cannot be deleted");
+                em.remove(em.getReference(Tariff.class, tariff.getId()));
+                return tariffsChanged(em, meterId, tariff.getValidFrom());
+            });
+        } finally {
+            database.getPriceSchedules().invalidate(meterId);
+        }
+    }
+
+    private double tariffsChanged(EntityManager em, long meterId, LocalDateTime validFrom) {
+        em.flush();
+        database.getPriceSchedules().invalidate(meterId);
+        em.unwrap(Session.class).doWork(connection -> rollups.rebuild(connection, meterId, validFrom));
+        var current = em.createQuery("from Tariff t where t.electricityMeter.id = :id and t.validFrom <= :now order by t.validFrom desc", Tariff.class)
+                .setParameter("id", meterId)
+                .setParameter("now", LocalDateTime.now())
+                .setMaxResults(1)
+                .getResultList();
+        var meter = em.find(ElectricityMeter.class, meterId);
+        if (!current.isEmpty()) meter.setKwhPrice(current.get(0).getKwhPrice());
+        return meter.getKwhPrice();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.i18n;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
+
+// every message of a locale is resolved once into a plain map, instead of a bundle lookup with locale fallbacks per call
+public final class Messages {
+
+    private static final String BUNDLE_NAME = "i18n/MessagesBundle";
+
+    private static final Map<Locale, Map<String, String>> messages = new ConcurrentHashMap<>();
+
+    private Messages() {
+    }
+
+    public static String get(String key) {
+        return get(Locale.getDefault(), key);
+    }
+
+    public static String get(Locale locale, String key) {
+        var message = messages.computeIfAbsent(locale, Messages::load).get(key);
+        if (message == null) {
+            throw new MissingResourceException(String.format("no message for %s", key), BUNDLE_NAME, key);
+        }
+        return message;
+    }
+
+    // has to be called when the language is switched at runtime
+    public static void clear() {
+        messages.clear();
+        ResourceBundle.clearCache(Messages.class.getClassLoader());
+    }
+
+    private static Map<String, String> load(Locale locale) {
+        var bundle = ResourceBundle.getBundle(BUNDLE_NAME, locale, Messages.class.getClassLoader());
+        Map<String, String> resolved = new HashMap<>();
+        for (String key : bundle.keySet()) {
+            resolved.put(key, bundle.getString(key));
+        }
+        return Map.copyOf(resolved);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.icons;
+
+import de.schipplock.gui.swing.svgicon.SvgIconManager;
+import de.schipplock.gui.swing.svgicon.SvgIcons;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// every SVG gets rasterized once per size, colour and screen scale and is shared by the tree, menus and dialogs afterwards
+public final class IconCache {
+
+    private record Key(SvgIcons icon, int width, int height, String color, double scale) {
+    }
+
+    private static final Map<Key, Icon> icons = new ConcurrentHashMap<>();
+
+    private static final Map<String, List<Image>> windowIconImages = new ConcurrentHashMap<>();
+
+    private IconCache() {
+    }
+
+    public static Icon get(SvgIcons icon, Dimension size, String color) {
+        return icons.computeIfAbsent(new Key(icon, size.width, size.height, color, screenScale()),
+                key -> SvgIconManager.getBuiltinIcon(icon, size, color));
+    }
+
+    public static List<Image> getWindowIconImages(String path) {
+        return windowIconImages.computeIfAbsent(path, SvgIconManager::getWindowIconImages);
+    }
+
+    public static int size() {
+        return icons.size() + windowIconImages.size();
+    }
+
+    // a bitmap rasterized for one HiDPI scale must not be reused on a screen with another one
+    private static double screenScale() {
+        if (GraphicsEnvironment.isHeadless()) return 1;
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration().getDefaultTransform().getScaleX();
+    }
+}
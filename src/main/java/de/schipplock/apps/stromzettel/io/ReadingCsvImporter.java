@@ -0,0 +1,181 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.io;
+
+import de.schipplock.apps.stromzettel.dao.ReadingDAO;
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import de.schipplock.apps.stromzettel.model.Reading;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.String.format;
+
+// reads "date;value" (or comma separated) rows line by line and commits them in batches, so the file never has to fit in memory
+public class ReadingCsvImporter {
+
+    public static final int DEFAULT_COMMIT_SIZE = 1000;
+
+    // commits one batch, the GUI hands every batch to the writer thread on its own so edits can run in between
+    public interface BatchWriter {
+        void write(List<Reading> readings);
+    }
+
+    public interface ProgressListener {
+        // return false to stop the import, everything committed so far stays
+        boolean progress(long rows, long bytes, double rowsPerSecond);
+    }
+
+    // skippedHeader is the first row if it did not parse, null if every row was data
+    public record Result(long rows, String skippedHeader) {
+    }
+
+    private final BatchWriter batchWriter;
+
+    private final int commitSize;
+
+    public ReadingCsvImporter(ReadingDAO readingDAO) {
+        this(readingDAO, DEFAULT_COMMIT_SIZE);
+    }
+
+    public ReadingCsvImporter(ReadingDAO readingDAO, int commitSize) {
+        this(readingDAO::persistAll, commitSize);
+    }
+
+    public ReadingCsvImporter(BatchWriter batchWriter, int commitSize) {
+        this.batchWriter = batchWriter;
+        this.commitSize = commitSize;
+    }
+
+    public Result importFile(Path csvFile, ElectricityMeter meter, ProgressListener listener) throws IOException {
+        try (var in = Files.newInputStream(csvFile)) {
+            return importReadings(in, meter, listener);
+        }
+    }
+
+    public Result importReadings(InputStream in, ElectricityMeter meter, ProgressListener listener) throws IOException {
+        long start = System.nanoTime();
+        long rows = 0;
+        long lineNumber = 0;
+        String skippedHeader = null;
+        boolean firstRow = true;
+        // counts what the decoder has consumed, ahead of the parsed rows by at most one buffer but exact at the end
+        var counter = new CountingInputStream(in);
+        var reader = new BufferedReader(new InputStreamReader(counter, StandardCharsets.UTF_8), 1 << 16);
+        List<Reading> batch = new ArrayList<>(commitSize);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (isBlankOrComment(line)) continue;
+            Reading reading;
+            try {
+                reading = parse(line, lineNumber);
+            } catch (IOException ex) {
+                // only a first row that is no valid reading counts as header
+                if (!firstRow) throw ex;
+                skippedHeader = line;
+                firstRow = false;
+                continue;
+            }
+            firstRow = false;
+            reading.setElectricityMeter(meter);
+            batch.add(reading);
+            if (batch.size() == commitSize) {
+                batchWriter.write(batch);
+                rows += batch.size();
+                // the writer may run on another thread, so a committed batch is never touched again
+                batch = new ArrayList<>(commitSize);
+                if (!listener.progress(rows, counter.count, rowsPerSecond(rows, start))) return new Result(rows, skippedHeader);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batchWriter.write(batch);
+            rows += batch.size();
+        }
+        listener.progress(rows, counter.count, rowsPerSecond(rows, start));
+        return new Result(rows, skippedHeader);
+    }
+
+    private static double rowsPerSecond(long rows, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed == 0 ? 0 : rows * 1_000_000_000d / elapsed;
+    }
+
+    private static boolean isBlankOrComment(String line) {
+        var trimmedLine = line.strip();
+        return trimmedLine.isEmpty() || trimmedLine.startsWith("#");
+    }
+
+    private static Reading parse(String line, long lineNumber) throws IOException {
+        var trimmedLine = line.strip();
+        int separator = trimmedLine.indexOf(';');
+        if (separator < 0) separator = trimmedLine.indexOf(',');
+        if (separator < 0) throw new IOException(format("line %d: expected \"date;value\" but got \"%s\"", lineNumber, line));
+
+        var date = trimmedLine.substring(0, separator).strip();
+        var value = trimmedLine.substring(separator + 1).strip();
+        try {
+            return new Reading(Long.parseLong(value), parseDate(date));
+        } catch (NumberFormatException | DateTimeParseException ex) {
+            throw new IOException(format("line %d: %s", lineNumber, ex.getMessage()), ex);
+        }
+    }
+
+    private static LocalDateTime parseDate(String date) {
+        return date.length() <= 10 ? LocalDate.parse(date).atStartOfDay() : LocalDateTime.parse(date.replace(' ', 'T'));
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.io;
+
+import de.schipplock.apps.stromzettel.analytics.ConsumptionSeries;
+import de.schipplock.apps.stromzettel.analytics.PriceSchedule;
+import de.schipplock.apps.stromzettel.dao.PriceSchedules;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.ScrollMode;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+// walks all readings once with a forward-only cursor on a stateless session, so nothing piles up in memory
+public class ReadingExporter {
+
+    public enum Format {
+        CSV, JSON;
+
+        public static Format forFileName(String fileName) {
+            return fileName.toLowerCase(Locale.ROOT).endsWith(".json") ? JSON : CSV;
+        }
+    }
+
+    private static final int FETCH_SIZE = 1000;
+
+    private final EntityManagerFactory emf;
+
+    public ReadingExporter(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    public long export(Writer writer, Format format) throws IOException {
+        var sink = format == Format.JSON ? new JsonSink(writer) : new CsvSink(writer);
+        long rows = 0;
+        try (var session = emf.unwrap(SessionFactory.class).openStatelessSession()) {
+            // costs follow the tariffs of the meter, one cursor per meter walks them along with the readings
+            Map<Long, PriceSchedule> schedules = session.doReturningWork(PriceSchedules::loadAll);
+            rows = export(session, sink, schedules);
+        }
+        sink.close();
+        return rows;
+    }
+
+    // quotes a CSV field only when it contains the separator, a quote or a line break
+    public static String escapeCsv(String value) {
+        if (value.indexOf(';') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static long export(StatelessSession session, Sink sink, Map<Long, PriceSchedule> schedules) throws IOException {
+        long rows = 0;
+        try (var results = session.createQuery("""
+                             select m.id, m.name, m.kwhPrice, r.readingDate, r.readingValue
+                             from Reading r join r.electricityMeter m
+                             order by m.id, r.readingDate, r.id""", Object[].class)
+                     .setFetchSize(FETCH_SIZE)
+                     .setReadOnly(true)
+                     .scroll(ScrollMode.FORWARD_ONLY)) {
+            Long currentMeterId = null;
+            PriceSchedule.Cursor prices = null;
+            long previousValue = 0;
+            long previousEpochSecond = 0;
+            while (results.next()) {
+                Object[] row = results.get();
+                var meterId = (Long) row[0];
+                var kwhPrice = (Double) row[2];
+                var readingValue = (Long) row[4];
+                long epochSecond = ConsumptionSeries.toEpochSecond((LocalDateTime) row[3]);
+                if (!meterId.equals(currentMeterId)) {
+                    if (currentMeterId != null) sink.endMeter();
+                    sink.beginMeter(meterId, (String) row[1], kwhPrice);
+                    currentMeterId = meterId;
+                    prices = schedules.getOrDefault(meterId, PriceSchedule.constant(kwhPrice)).cursor();
+                    previousValue = readingValue;
+                    previousEpochSecond = epochSecond;
+                }
+                long consumption = readingValue - previousValue;
+                sink.reading(meterId, (String) row[1], (LocalDateTime) row[3], readingValue, consumption, prices.costs(previousEpochSecond, epochSecond, consumption));
+                previousValue = readingValue;
+                previousEpochSecond = epochSecond;
+                rows++;
+            }
+            if (currentMeterId != null) sink.endMeter();
+        }
+        return rows;
+    }
+
+    private interface Sink {
+        void beginMeter(Long meterId, String name, double kwhPrice) throws IOException;
+
+        void reading(Long meterId, String meterName, LocalDateTime date, long value, long consumption, double costs) throws IOException;
+
+        void endMeter() throws IOException;
+
+        void close() throws IOException;
+    }
+
+    private static class CsvSink implements Sink {
+
+        private final Writer writer;
+
+        CsvSink(Writer writer) throws IOException {
+            this.writer = writer;
+            writer.write("meter;name;date;value;consumption;costs\n");
+        }
+
+        @Override
+        public void beginMeter(Long meterId, String name, double kwhPrice) {
+        }
+
+        @Override
+        public void reading(Long meterId, String meterName, LocalDateTime date, long value, long consumption, double costs) throws IOException {
+            writer.write(format(Locale.ROOT, "%d;%s;%s;%d;%d;%.2f\n", meterId, escapeCsv(meterName), date.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME), value, consumption, costs));
+        }
+
+        @Override
+        public void endMeter() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.flush();
+        }
+    }
+
+    private static class JsonSink implements Sink {
+
+        private final JsonGenerator generator;
+
+        JsonSink(Writer writer) {
+            generator = Json.createGeneratorFactory(Map.of()).createGenerator(writer);
+            generator.writeStartObject().writeStartArray("meters");
+        }
+
+        @Override
+        public void beginMeter(Long meterId, String name, double kwhPrice) {
+            generator.writeStartObject()
+                    .write("id", meterId)
+                    .write("name", name)
+                    .write("kwhPrice", kwhPrice)
+                    .writeStartArray("readings");
+        }
+
+        @Override
+        public void reading(Long meterId, String meterName, LocalDateTime date, long value, long consumption, double costs) {
+            generator.writeStartObject()
+                    .write("date", date.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
+                    .write("value", value)
+                    .write("consumption", consumption)
+                    .write("costs", costs)
+                    .writeEnd();
+        }
+
+        @Override
+        public void endMeter() {
+            generator.writeEnd().writeEnd();
+        }
+
+        @Override
+        public void close() {
+            generator.writeEnd().writeEnd();
+            generator.flush();
+        }
+    }
+}
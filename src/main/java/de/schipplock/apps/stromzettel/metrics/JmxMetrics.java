@@ -0,0 +1,159 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.metrics;
+
+import org.hibernate.stat.Statistics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import static java.lang.String.format;
+
+// publishes the latency histograms together with the Hibernate statistics over JMX
+public class JmxMetrics implements MetricsMXBean {
+
+    private final Statistics statistics;
+
+    private ObjectName objectName;
+
+    public JmxMetrics(Statistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public void register() {
+        try {
+            var name = new ObjectName("de.schipplock.apps.stromzettel:type=Metrics");
+            var server = ManagementFactory.getPlatformMBeanServer();
+            // a second Database in the same JVM takes over the name
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException ex) {
+            System.err.println(format("registering the metrics MBean failed: %s", ex.getMessage()));
+        }
+    }
+
+    public void unregister() {
+        if (objectName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException ex) {
+            // already gone
+        }
+        objectName = null;
+    }
+
+    @Override
+    public Map<String, String> getLatencies() {
+        Map<String, String> latencies = new LinkedHashMap<>();
+        Metrics.getHistograms().forEach((name, histogram) -> latencies.put(name, histogram.toString()));
+        return latencies;
+    }
+
+    @Override
+    public long getQueryExecutionCount() {
+        return statistics.getQueryExecutionCount();
+    }
+
+    @Override
+    public long getQueryExecutionMaxTime() {
+        return statistics.getQueryExecutionMaxTime();
+    }
+
+    @Override
+    public String getQueryExecutionMaxTimeQueryString() {
+        return statistics.getQueryExecutionMaxTimeQueryString();
+    }
+
+    @Override
+    public long getEntityLoadCount() {
+        return statistics.getEntityLoadCount();
+    }
+
+    @Override
+    public long getEntityFetchCount() {
+        return statistics.getEntityFetchCount();
+    }
+
+    @Override
+    public long getEntityInsertCount() {
+        return statistics.getEntityInsertCount();
+    }
+
+    @Override
+    public long getEntityUpdateCount() {
+        return statistics.getEntityUpdateCount();
+    }
+
+    @Override
+    public long getEntityDeleteCount() {
+        return statistics.getEntityDeleteCount();
+    }
+
+    @Override
+    public long getPrepareStatementCount() {
+        return statistics.getPrepareStatementCount();
+    }
+
+    @Override
+    public long getTransactionCount() {
+        return statistics.getTransactionCount();
+    }
+
+    @Override
+    public long getSuccessfulTransactionCount() {
+        return statistics.getSuccessfulTransactionCount();
+    }
+
+    @Override
+    public double getSecondLevelCacheHitRatio() {
+        return ratio(statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount());
+    }
+
+    @Override
+    public double getQueryCacheHitRatio() {
+        return ratio(statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount());
+    }
+
+    @Override
+    public String getReport() {
+        var report = new StringJoiner(System.lineSeparator());
+        Metrics.getHistograms().forEach((name, histogram) -> report.add(format("%s: %s", name, histogram)));
+        report.add(format("queries: executed=%d slowest=%dms prepared statements=%d",
+                getQueryExecutionCount(), getQueryExecutionMaxTime(), getPrepareStatementCount()));
+        report.add(format("entities: loaded=%d fetched=%d inserted=%d updated=%d deleted=%d",
+                getEntityLoadCount(), getEntityFetchCount(), getEntityInsertCount(), getEntityUpdateCount(), getEntityDeleteCount()));
+        report.add(format("transactions: %d, %d successful", getTransactionCount(), getSuccessfulTransactionCount()));
+        report.add(format("second-level cache: hits=%d misses=%d puts=%d ratio=%.2f, query cache: hits=%d misses=%d ratio=%.2f",
+                statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount(), statistics.getSecondLevelCachePutCount(),
+                getSecondLevelCacheHitRatio(), statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount(), getQueryCacheHitRatio()));
+        return report.toString();
+    }
+
+    @Override
+    public void reset() {
+        Metrics.clear();
+        statistics.clear();
+    }
+
+    private static double ratio(long hits, long misses) {
+        return hits + misses == 0 ? 0 : hits / (double) (hits + misses);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.metrics;
+
+import java.util.Map;
+
+// what jconsole or VisualVM show under de.schipplock.apps.stromzettel:type=Metrics
+public interface MetricsMXBean {
+
+    // operation name to "count=.. mean=.. p50=.. p95=.. p99=.. max=.."
+    Map<String, String> getLatencies();
+
+    long getQueryExecutionCount();
+
+    long getQueryExecutionMaxTime();
+
+    String getQueryExecutionMaxTimeQueryString();
+
+    long getEntityLoadCount();
+
+    long getEntityFetchCount();
+
+    long getEntityInsertCount();
+
+    long getEntityUpdateCount();
+
+    long getEntityDeleteCount();
+
+    long getPrepareStatementCount();
+
+    long getTransactionCount();
+
+    long getSuccessfulTransactionCount();
+
+    double getSecondLevelCacheHitRatio();
+
+    double getQueryCacheHitRatio();
+
+    String getReport();
+
+    void reset();
+}
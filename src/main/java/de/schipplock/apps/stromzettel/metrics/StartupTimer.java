@@ -0,0 +1,58 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.metrics;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import static java.lang.String.format;
+
+// milliseconds from the start of the JVM process to named startup milestones, only the first mark of a milestone counts
+public class StartupTimer {
+
+    private final long startMillis;
+
+    private final Map<String, Long> milestones = new LinkedHashMap<>();
+
+    public StartupTimer() {
+        this(ProcessHandle.current().info().startInstant().map(Instant::toEpochMilli).orElse(System.currentTimeMillis()));
+    }
+
+    public StartupTimer(long startMillis) {
+        this.startMillis = startMillis;
+    }
+
+    public synchronized void mark(String milestone) {
+        milestones.putIfAbsent(milestone, System.currentTimeMillis() - startMillis);
+    }
+
+    public synchronized boolean isMarked(String milestone) {
+        return milestones.containsKey(milestone);
+    }
+
+    public synchronized long getMillis(String milestone) {
+        return milestones.getOrDefault(milestone, -1L);
+    }
+
+    @Override
+    public synchronized String toString() {
+        var joiner = new StringJoiner(" ");
+        milestones.forEach((milestone, millis) -> joiner.add(format("%s=%dms", milestone, millis)));
+        return joiner.toString();
+    }
+}
@@ -16,17 +16,26 @@
 package de.schipplock.apps.stromzettel.model;
 
 import jakarta.persistence.*;
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "ELECTRICITY_METERS")
 public class ElectricityMeter {
 
     @Id
-    @SequenceGenerator(name = "electricity_meter_seq_gen", sequenceName = "electricity_meter_seq", initialValue = 1, allocationSize = 1)
+    @SequenceGenerator(name = "electricity_meter_seq_gen", sequenceName = "electricity_meter_seq", initialValue = 1, allocationSize = 50)
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "electricity_meter_seq_gen")
     private Long id;
 
@@ -34,8 +43,14 @@ public class ElectricityMeter {
 
     protected double kwhPrice;
 
+    // keyed by id, so removing or replacing a reading does not have to search the whole history
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "electricityMeter", orphanRemoval = true)
-    private List<Reading> readings = new ArrayList<>();
+    @MapKey
+    private Map<Long, Reading> readings = new HashMap<>();
+
+    // readings sorted by date, built on first use and kept in sync by add/remove and Reading.setReadingDate
+    @Transient
+    private NavigableSet<Reading> readingsByDate;
 
     public ElectricityMeter() {}
 
@@ -48,6 +63,10 @@ public class ElectricityMeter {
         return id;
     }
 
+    public void setId(Long id) {
+        this.id = id;
+    }
+
     public String getName() {
         return name;
     }
@@ -56,37 +75,69 @@ public class ElectricityMeter {
         this.name = name;
     }
 
-    public List<Reading> getReadings() {
-        return readings;
+    public Collection<Reading> getReadings() {
+        return Collections.unmodifiableCollection(readings.values());
+    }
+
+    // false as long as the history has not been fetched from the database
+    public boolean isReadingsLoaded() {
+        return Hibernate.isInitialized(readings);
     }
 
     public Reading getLatestReading() {
-        return readings.get(readings.size()-1);
+        return readingsByDate().last();
     }
 
     public Reading getPreviousReading(Reading referenceReading) {
-        long referenceReadingId = referenceReading.getId();
-        Reading previousReading = referenceReading;
-        for (int i = readings.size()-1; i >= 0; i--) {
-            var reading = readings.get(i);
-            if (reading.getId() < referenceReadingId) {
-                previousReading = readings.get(i);
-                break;
-            }
-        }
-        return previousReading;
+        Reading previousReading = readingsByDate().lower(referenceReading);
+        return previousReading == null ? referenceReading : previousReading;
+    }
+
+    public Reading getNextReading(Reading referenceReading) {
+        Reading nextReading = readingsByDate().higher(referenceReading);
+        return nextReading == null ? referenceReading : nextReading;
     }
 
-    public void setReadings(List<Reading> readings) {
-        this.readings = readings;
+    // copied first, the given readings may well be a view of the current ones; the map itself stays because hibernate
+    // tracks the orphans of the instance it handed out
+    public void setReadings(Collection<Reading> readings) {
+        var replacement = new ArrayList<>(readings);
+        this.readings.clear();
+        replacement.forEach(reading -> this.readings.put(requireId(reading), reading));
+        this.readingsByDate = null;
     }
 
+    // a reading with the same id takes the place of the one the meter has, e.g. the instance a merge handed back
     public void addReading(Reading reading) {
-        readings.add(reading);
+        var previous = readings.put(requireId(reading), reading);
+        if (previous != null) unindex(previous);
+        index(reading);
     }
 
     public void removeReading(Reading reading) {
-        readings.remove(reading);
+        var removed = readings.remove(reading.getId());
+        if (removed != null) unindex(removed);
+    }
+
+    private static Long requireId(Reading reading) {
+        if (reading.getId() == null) throw new IllegalArgumentException("readings are kept by id, persist the reading first");
+        return reading.getId();
+    }
+
+    private NavigableSet<Reading> readingsByDate() {
+        if (readingsByDate == null) {
+            readingsByDate = new TreeSet<>(Reading.BY_DATE);
+            readingsByDate.addAll(readings.values());
+        }
+        return readingsByDate;
+    }
+
+    void index(Reading reading) {
+        if (readingsByDate != null) readingsByDate.add(reading);
+    }
+
+    void unindex(Reading reading) {
+        if (readingsByDate != null) readingsByDate.remove(reading);
     }
 
     public double getKwhPrice() {
@@ -99,19 +150,20 @@ public class ElectricityMeter {
 
     @Override
     public String toString() {
-        return "<html><b>" + name + "</b></html>";
+        return name;
     }
 
+    // the same row is the same meter, whatever has been changed on either copy; unsaved meters only equal themselves.
+    // the hash changes once the id gets assigned, an unsaved meter must not sit in a hash based collection across persist
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        ElectricityMeter that = (ElectricityMeter) o;
-        return Double.compare(that.kwhPrice, kwhPrice) == 0 && Objects.equals(id, that.id) && Objects.equals(name, that.name) && Objects.equals(readings, that.readings);
+        if (!(o instanceof ElectricityMeter that)) return false;
+        return getId() != null && getId().equals(that.getId());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, name, kwhPrice);
+        return getId() == null ? System.identityHashCode(this) : getId().hashCode();
     }
 }
@@ -1,110 +1,126 @@
-/*
- * Copyright 2023 Andreas Schipplock
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *     http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package de.schipplock.apps.stromzettel.model;
-
-import java.io.Serial;
-import java.io.Serializable;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Objects;
-
-import static java.lang.String.format;
-
-import de.schipplock.apps.stromzettel.StromZettel;
-import jakarta.persistence.*;
-
-@Entity
-@Table(name = "READINGS")
-public class Reading implements Serializable {
-
-    @Serial
-    private static final long serialVersionUID = 6222864265152509463L;
-
-    @ManyToOne
-    @JoinColumn(name = "electricity_meter_id")
-    private ElectricityMeter electricityMeter;
-    
-    @Id
-    @SequenceGenerator(name = "readings_seq", sequenceName = "readings_sequence", initialValue = 1, allocationSize = 1)
-    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "readings_seq")
-    protected Long id;
-    
-    protected Long readingValue;
-    
-    @Column(name = "readingDate")
-    protected LocalDateTime readingDate;
-    
-    public Reading() {}
-
-    public Reading(Long readingValue, LocalDateTime readingDate) {
-        super();
-        this.readingValue = readingValue;
-        this.readingDate = readingDate;
-    }
-
-    public Long getId() {
-        return id;
-    }
-
-    public void setId(Long id) {
-        this.id = id;
-    }
-
-    public Long getReadingValue() {
-        return readingValue;
-    }
-
-    public void setReadingValue(Long readingValue) {
-        this.readingValue = readingValue;
-    }
-
-    public LocalDateTime getReadingDate() {
-        return readingDate;
-    }
-
-    public void setReadingDate(LocalDateTime readingDate) {
-        this.readingDate = readingDate;
-    }
-
-    public ElectricityMeter getElectricityMeter() {
-        return electricityMeter;
-    }
-
-    public void setElectricityMeter(ElectricityMeter electricityMeter) {
-        this.electricityMeter = electricityMeter;
-    }
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        Reading reading = (Reading) o;
-        return Objects.equals(electricityMeter, reading.electricityMeter) && Objects.equals(id, reading.id) && Objects.equals(readingValue, reading.readingValue) && Objects.equals(readingDate, reading.readingDate);
-    }
-
-    @Override
-    public int hashCode() {
-        return Objects.hash(electricityMeter, id, readingValue, readingDate);
-    }
-
-    @Override
-    public String toString() {
-        var dateTemplate = format("<font color=\"#41474d\">%s</font>", getReadingDate().format(DateTimeFormatter.ISO_LOCAL_DATE));
-        var readingValueTemplate = format("<font color=\"#151c16\"><b>%s</b></font>", readingValue);
-        var kwhTemplate = format("<font size=1 color=\"%s\"><b>kwH</b></font>", StromZettel.COLOR_GREEN);
-        return format("<html>%s | %s %s</html>", dateTemplate, readingValueTemplate, kwhTemplate);
-    }
-}
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.model;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+import static java.lang.String.format;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+@Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(name = "READINGS", indexes = {
+        @Index(name = "IDX_READINGS_METER_DATE", columnList = "electricity_meter_id, readingDate, id"),
+        @Index(name = "IDX_READINGS_METER_DATE_DESC", columnList = "electricity_meter_id, readingDate desc, id desc"),
+        @Index(name = "IDX_READINGS_METER_VALUE", columnList = "electricity_meter_id, readingValue")
+})
+public class Reading implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 6222864265152509463L;
+
+    // consistent with equals: copies of a saved reading tie, only two unsaved readings on the same date fall back to identity
+    public static final Comparator<Reading> BY_DATE = Comparator.comparing(Reading::getReadingDate).thenComparing(Reading::compareIds);
+
+    @ManyToOne
+    @JoinColumn(name = "electricity_meter_id")
+    private ElectricityMeter electricityMeter;
+    
+    @Id
+    @SequenceGenerator(name = "readings_seq", sequenceName = "readings_sequence", initialValue = 1, allocationSize = 50)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "readings_seq")
+    protected Long id;
+    
+    protected Long readingValue;
+    
+    @Column(name = "readingDate")
+    protected LocalDateTime readingDate;
+    
+    public Reading() {}
+
+    public Reading(Long readingValue, LocalDateTime readingDate) {
+        super();
+        this.readingValue = readingValue;
+        this.readingDate = readingDate;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getReadingValue() {
+        return readingValue;
+    }
+
+    public void setReadingValue(Long readingValue) {
+        this.readingValue = readingValue;
+    }
+
+    public LocalDateTime getReadingDate() {
+        return readingDate;
+    }
+
+    public void setReadingDate(LocalDateTime readingDate) {
+        if (electricityMeter != null) electricityMeter.unindex(this);
+        this.readingDate = readingDate;
+        if (electricityMeter != null) electricityMeter.index(this);
+    }
+
+    public ElectricityMeter getElectricityMeter() {
+        return electricityMeter;
+    }
+
+    public void setElectricityMeter(ElectricityMeter electricityMeter) {
+        this.electricityMeter = electricityMeter;
+    }
+
+    // by id like ElectricityMeter, comparing never walks over to the meter and its history
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Reading that)) return false;
+        return getId() != null && getId().equals(that.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return getId() == null ? System.identityHashCode(this) : getId().hashCode();
+    }
+
+    private static int compareIds(Reading reading, Reading other) {
+        if (reading.getId() == null && other.getId() == null) {
+            return Integer.compare(System.identityHashCode(reading), System.identityHashCode(other));
+        }
+        return Comparator.nullsLast(Comparator.<Long>naturalOrder()).compare(reading.getId(), other.getId());
+    }
+
+    // the tree paints readings with MeterTreeCellRenderer, this is only used for type-ahead and logging
+    @Override
+    public String toString() {
+        return format("%s | %d kwH", readingDate == null ? null : readingDate.toLocalDate(), readingValue);
+    }
+}
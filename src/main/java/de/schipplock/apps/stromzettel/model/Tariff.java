@@ -0,0 +1,131 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.model;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+import static java.lang.String.format;
+
+// the price of a meter from a point in time on, until the next tariff of the meter takes over
+@Entity
+@Table(name = "TARIFFS", indexes = @Index(name = "IDX_TARIFFS_METER_VALIDFROM", columnList = "electricity_meter_id, validFrom"))
+public class Tariff {
+
+    // new meters start with a tariff valid from here, the first tariff of a meter also covers readings before it
+    public static final LocalDateTime BEGINNING = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    @Id
+    @SequenceGenerator(name = "tariffs_seq", sequenceName = "tariffs_sequence", initialValue = 1, allocationSize = 50)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tariffs_seq")
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "electricity_meter_id", nullable = false)
+    private ElectricityMeter electricityMeter;
+
+    @Column(name = "validFrom", nullable = false)
+    private LocalDateTime validFrom;
+
+    // cents per kWh like on the meter
+    private double kwhPrice;
+
+    // an optional daily window with its own price, e.g. a night rate from 22:00 to 06:00
+    private LocalTime offPeakStart;
+
+    private LocalTime offPeakEnd;
+
+    private Double offPeakKwhPrice;
+
+    public Tariff() {}
+
+    public Tariff(ElectricityMeter electricityMeter, LocalDateTime validFrom, double kwhPrice) {
+        this.electricityMeter = electricityMeter;
+        this.validFrom = validFrom;
+        this.kwhPrice = kwhPrice;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public ElectricityMeter getElectricityMeter() {
+        return electricityMeter;
+    }
+
+    public void setElectricityMeter(ElectricityMeter electricityMeter) {
+        this.electricityMeter = electricityMeter;
+    }
+
+    public LocalDateTime getValidFrom() {
+        return validFrom;
+    }
+
+    public void setValidFrom(LocalDateTime validFrom) {
+        this.validFrom = validFrom;
+    }
+
+    public double getKwhPrice() {
+        return kwhPrice;
+    }
+
+    public void setKwhPrice(double kwhPrice) {
+        this.kwhPrice = kwhPrice;
+    }
+
+    public LocalTime getOffPeakStart() {
+        return offPeakStart;
+    }
+
+    public LocalTime getOffPeakEnd() {
+        return offPeakEnd;
+    }
+
+    public Double getOffPeakKwhPrice() {
+        return offPeakKwhPrice;
+    }
+
+    public void setOffPeak(LocalTime start, LocalTime end, Double kwhPrice) {
+        this.offPeakStart = start;
+        this.offPeakEnd = end;
+        this.offPeakKwhPrice = kwhPrice;
+    }
+
+    public boolean hasOffPeak() {
+        return offPeakStart != null && offPeakEnd != null && offPeakKwhPrice != null && !offPeakStart.equals(offPeakEnd);
+    }
+
+    @Override
+    public String toString() {
+        if (!hasOffPeak()) return format("%s: %.2f", validFrom, kwhPrice);
+        return format("%s: %.2f, %s-%s: %.2f", validFrom, kwhPrice, offPeakStart, offPeakEnd, offPeakKwhPrice);
+    }
+
+    // by id like ElectricityMeter
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Tariff that)) return false;
+        return getId() != null && getId().equals(that.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        return getId() == null ? System.identityHashCode(this) : getId().hashCode();
+    }
+}
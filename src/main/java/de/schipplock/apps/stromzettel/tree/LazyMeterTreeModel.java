@@ -0,0 +1,357 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.tree;
+
+import de.schipplock.apps.stromzettel.dao.AsyncDAO;
+import de.schipplock.apps.stromzettel.dao.ReadingFilter;
+import de.schipplock.apps.stromzettel.metrics.Metrics;
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import de.schipplock.apps.stromzettel.model.Reading;
+
+import javax.swing.*;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeExpansionListener;
+import javax.swing.event.TreeWillExpandListener;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.MutableTreeNode;
+import java.io.Serial;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+public class LazyMeterTreeModel extends DefaultTreeModel implements TreeWillExpandListener, TreeExpansionListener {
+
+    @Serial
+    private static final long serialVersionUID = -6024181520316548377L;
+
+    public static final int PAGE_SIZE = 100;
+
+    private final transient AsyncDAO asyncDAO;
+
+    private final String moreReadingsCaption;
+
+    private final String loadingCaption;
+
+    private final transient Consumer<Throwable> errorHandler;
+
+    // every meter in the order it was added, the root only holds the ones the name filter lets through
+    private final List<MeterTreeNode> meterNodes = new ArrayList<>();
+
+    private String meterNameFilter = "";
+
+    private transient ReadingFilter readingFilter = ReadingFilter.NONE;
+
+    public LazyMeterTreeModel(DefaultMutableTreeNode root, AsyncDAO asyncDAO, String moreReadingsCaption, String loadingCaption, Consumer<Throwable> errorHandler) {
+        super(root);
+        this.asyncDAO = asyncDAO;
+        this.moreReadingsCaption = moreReadingsCaption;
+        this.loadingCaption = loadingCaption;
+        this.errorHandler = errorHandler;
+    }
+
+    public void addMeters(List<ElectricityMeter> meters) {
+        var rootNode = (DefaultMutableTreeNode) getRoot();
+        List<Integer> indices = new ArrayList<>();
+        for (var meter : meters) {
+            var meterNode = new MeterTreeNode(meter);
+            meterNodes.add(meterNode);
+            if (!matchesMeterName(meterNode)) continue;
+            indices.add(rootNode.getChildCount());
+            rootNode.add(meterNode);
+        }
+        if (!indices.isEmpty()) nodesWereInserted(rootNode, indices.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    public MeterTreeNode addMeter(ElectricityMeter meter) {
+        var meterNode = new MeterTreeNode(meter);
+        restoreMeter(meterNode, meterNodes.size());
+        return meterNode;
+    }
+
+    // returns where the meter was, for restoreMeter
+    public int removeMeter(MeterTreeNode meterNode) {
+        int index = meterNodes.indexOf(meterNode);
+        meterNodes.remove(meterNode);
+        if (meterNode.getParent() != null) removeNodeFromParent(meterNode);
+        return index;
+    }
+
+    public void restoreMeter(MeterTreeNode meterNode, int index) {
+        meterNodes.add(Math.max(0, Math.min(index, meterNodes.size())), meterNode);
+        if (matchesMeterName(meterNode)) insertNodeInto(meterNode, (DefaultMutableTreeNode) getRoot(), visibleIndex(meterNode));
+    }
+
+    public ReadingFilter getReadingFilter() {
+        return readingFilter;
+    }
+
+    // meters are filtered by name in memory; readings already on screen are narrowed in memory when the new filter
+    // lets through less than the old one, otherwise the first page is fetched again through the indexed query
+    public void setFilter(String meterName, ReadingFilter filter) {
+        long start = System.nanoTime();
+        var name = meterName.strip().toLowerCase(Locale.ROOT);
+        if (!name.equals(meterNameFilter)) {
+            meterNameFilter = name;
+            applyMeterNameFilter();
+        }
+        if (!filter.equals(readingFilter)) {
+            var previousFilter = readingFilter;
+            readingFilter = filter;
+            for (var meterNode : meterNodes) {
+                if (!meterNode.isLoaded()) continue;
+                if (filter.narrows(previousFilter) && !meterNode.isLoading()) {
+                    narrow(meterNode, previousFilter);
+                } else {
+                    refresh(meterNode);
+                }
+            }
+        }
+        Metrics.record("tree.filter", System.nanoTime() - start);
+    }
+
+    private boolean matchesMeterName(MeterTreeNode meterNode) {
+        return meterNameFilter.isEmpty() || meterNode.getMeter().getName().toLowerCase(Locale.ROOT).contains(meterNameFilter);
+    }
+
+    // moves only the meters whose visibility changes, expanded meters that stay keep their readings
+    private void applyMeterNameFilter() {
+        var rootNode = (DefaultMutableTreeNode) getRoot();
+        int index = 0;
+        for (var meterNode : meterNodes) {
+            boolean visible = meterNode.getParent() == rootNode;
+            boolean matches = matchesMeterName(meterNode);
+            if (visible && !matches) {
+                unload(meterNode);
+                removeNodeFromParent(meterNode);
+            } else if (matches) {
+                if (!visible) insertNodeInto(meterNode, rootNode, index);
+                index++;
+            }
+        }
+    }
+
+    private int visibleIndex(MeterTreeNode meterNode) {
+        var rootNode = (DefaultMutableTreeNode) getRoot();
+        int index = 0;
+        for (var node : meterNodes) {
+            if (node == meterNode) break;
+            if (node.getParent() == rootNode) index++;
+        }
+        return index;
+    }
+
+    // drops the loaded readings the filter no longer lets through; the next page continues after the last reading that
+    // is left, so nothing in between gets lost, and it is fetched right away once less than a page is left
+    private void narrow(MeterTreeNode meterNode, ReadingFilter previousFilter) {
+        int readings = meterNode.getChildCount() - (meterNode.getPlaceholderNode() == null ? 0 : 1);
+        // the loaded readings are newest first, so the ones from "to" on lead and the ones before "from" trail
+        int first = readingFilter.getTo() == null ? 0 : firstBefore(meterNode, readings, readingFilter.getTo());
+        int end = readingFilter.getFrom() == null ? readings : firstBefore(meterNode, readings, readingFilter.getFrom());
+        // in between only the values can rule a reading out, and only if their bounds changed
+        boolean sameValues = Objects.equals(readingFilter.getMinValue(), previousFilter.getMinValue())
+                && Objects.equals(readingFilter.getMaxValue(), previousFilter.getMaxValue());
+        List<Integer> indices = new ArrayList<>();
+        List<Object> removed = new ArrayList<>();
+        List<MutableTreeNode> kept = new ArrayList<>();
+        for (int i = 0; i < meterNode.getChildCount(); i++) {
+            var child = (DefaultMutableTreeNode) meterNode.getChildAt(i);
+            if (i < first || i >= end && i < readings || i < end && !sameValues && !readingFilter.matches((Reading) child.getUserObject())) {
+                indices.add(i);
+                removed.add(child);
+            } else {
+                kept.add(child);
+            }
+        }
+        if (!removed.isEmpty()) {
+            // one pass instead of shifting the remaining children for every reading that goes
+            meterNode.removeAllChildren();
+            kept.forEach(meterNode::add);
+            nodesWereRemoved(meterNode, indices.stream().mapToInt(Integer::intValue).toArray(), removed.toArray());
+        }
+        if (meterNode.getPlaceholderNode() instanceof MoreReadingsTreeNode && meterNode.getChildCount() - 1 < PAGE_SIZE) {
+            loadNextPage(meterNode);
+        }
+    }
+
+    // index of the first of the loaded readings that is older than the given moment, or "readings" if there is none
+    private static int firstBefore(MeterTreeNode meterNode, int readings, LocalDateTime dateTime) {
+        int low = 0;
+        int high = readings;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            var reading = (Reading) ((DefaultMutableTreeNode) meterNode.getChildAt(middle)).getUserObject();
+            if (reading.getReadingDate().isBefore(dateTime)) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    public void loadNextPage(MeterTreeNode meterNode) {
+        if (meterNode.isLoading()) return;
+        var placeholderNode = meterNode.getPlaceholderNode();
+        if (placeholderNode != null) {
+            removeNodeFromParent(placeholderNode);
+        }
+        insertNodeInto(new LoadingTreeNode(loadingCaption), meterNode, meterNode.getChildCount());
+        meterNode.setLoaded(true);
+
+        int generation = meterNode.getGeneration();
+        long start = System.nanoTime();
+        // one extra row tells us whether another page exists without a count query
+        asyncDAO.findPage(meterNode.getMeter(), meterNode.getLastLoadedReading(), PAGE_SIZE + 1, readingFilter)
+                .whenCompleteAsync((page, error) -> {
+                    if (generation != meterNode.getGeneration()) return;
+                    removeNodeFromParent(meterNode.getPlaceholderNode());
+                    if (error != null) {
+                        pageFailed(meterNode);
+                        errorHandler.accept(error);
+                        return;
+                    }
+                    appendPage(meterNode, page);
+                    Metrics.record("tree.loadPage", System.nanoTime() - start);
+                }, SwingUtilities::invokeLater);
+    }
+
+    // leaves a way to try again: the next expansion fetches the first page, a later page gets its "more" node back
+    private void pageFailed(MeterTreeNode meterNode) {
+        if (meterNode.getLastLoadedReading() == null) {
+            meterNode.setLoaded(false);
+        } else {
+            insertNodeInto(new MoreReadingsTreeNode(moreReadingsCaption), meterNode, meterNode.getChildCount());
+        }
+    }
+
+    private void appendPage(MeterTreeNode meterNode, List<Reading> page) {
+        boolean hasMore = page.size() > PAGE_SIZE;
+        if (hasMore) page = page.subList(0, PAGE_SIZE);
+
+        int firstIndex = meterNode.getChildCount();
+        page.forEach(reading -> meterNode.add(new DefaultMutableTreeNode(reading, false)));
+        if (hasMore) meterNode.add(new MoreReadingsTreeNode(moreReadingsCaption));
+
+        int[] indices = new int[meterNode.getChildCount() - firstIndex];
+        for (int i = 0; i < indices.length; i++) indices[i] = firstIndex + i;
+        if (indices.length > 0) nodesWereInserted(meterNode, indices);
+    }
+
+    public void unload(MeterTreeNode meterNode) {
+        int childCount = meterNode.getChildCount();
+        if (childCount == 0) {
+            meterNode.setLoaded(false);
+            meterNode.nextGeneration();
+            return;
+        }
+        int[] indices = new int[childCount];
+        Object[] children = new Object[childCount];
+        for (int i = 0; i < childCount; i++) {
+            indices[i] = i;
+            children[i] = meterNode.getChildAt(i);
+        }
+        meterNode.removeAllChildren();
+        meterNode.setLoaded(false);
+        meterNode.nextGeneration();
+        nodesWereRemoved(meterNode, indices, children);
+    }
+
+    // throws away the loaded readings and fetches the first page again if the meter was showing any
+    public void refresh(MeterTreeNode meterNode) {
+        boolean wasLoaded = meterNode.isLoaded();
+        unload(meterNode);
+        if (wasLoaded) loadNextPage(meterNode);
+    }
+
+    // inserts a reading where it belongs in the newest-first order of the loaded pages, unless the filter hides it
+    public DefaultMutableTreeNode insertReading(MeterTreeNode meterNode, Reading reading) {
+        if (!meterNode.isLoaded() || !readingFilter.matches(reading)) return null;
+        int index = insertIndex(meterNode, reading);
+        if (index < 0) return null;
+        var readingNode = new DefaultMutableTreeNode(reading, false);
+        insertNodeInto(readingNode, meterNode, index);
+        return readingNode;
+    }
+
+    // an edited reading keeps its row unless its new date moves it away from its neighbours or the filter hides it now;
+    // a reading the filter lets through again comes back through insertReading
+    public void readingChanged(DefaultMutableTreeNode readingNode, LocalDateTime previousReadingDate) {
+        if (!(readingNode.getParent() instanceof MeterTreeNode meterNode)) return;
+        var reading = (Reading) readingNode.getUserObject();
+        if (!readingFilter.matches(reading)) {
+            removeNodeFromParent(readingNode);
+            return;
+        }
+        if (reading.getReadingDate().equals(previousReadingDate) || sortsAt(meterNode, meterNode.getIndex(readingNode), reading)) {
+            nodeChanged(readingNode);
+            return;
+        }
+        removeNodeFromParent(readingNode);
+        int index = insertIndex(meterNode, reading);
+        if (index >= 0) insertNodeInto(readingNode, meterNode, index);
+    }
+
+    // -1 when the reading belongs to a page that has not been fetched yet
+    private static int insertIndex(MeterTreeNode meterNode, Reading reading) {
+        int index = 0;
+        for (; index < meterNode.getChildCount(); index++) {
+            var child = (DefaultMutableTreeNode) meterNode.getChildAt(index);
+            if (!(child.getUserObject() instanceof Reading loadedReading)) return -1;
+            if (!reading.getReadingDate().isBefore(loadedReading.getReadingDate())) break;
+        }
+        return index;
+    }
+
+    private static boolean sortsAt(MeterTreeNode meterNode, int index, Reading reading) {
+        if (index > 0) {
+            var previous = (Reading) ((DefaultMutableTreeNode) meterNode.getChildAt(index - 1)).getUserObject();
+            if (reading.getReadingDate().isAfter(previous.getReadingDate())) return false;
+        }
+        if (index + 1 < meterNode.getChildCount()) {
+            // the last loaded reading is the cursor for the next page, it must not end up older than the readings behind it
+            if (!(((DefaultMutableTreeNode) meterNode.getChildAt(index + 1)).getUserObject() instanceof Reading next)) return false;
+            return !reading.getReadingDate().isBefore(next.getReadingDate());
+        }
+        return true;
+    }
+
+    @Override
+    public void treeWillExpand(TreeExpansionEvent event) {
+        if (event.getPath().getLastPathComponent() instanceof MeterTreeNode meterNode && !meterNode.isLoaded()) {
+            loadNextPage(meterNode);
+        }
+    }
+
+    @Override
+    public void treeWillCollapse(TreeExpansionEvent event) {
+    }
+
+    @Override
+    public void treeExpanded(TreeExpansionEvent event) {
+    }
+
+    @Override
+    public void treeCollapsed(TreeExpansionEvent event) {
+        // forget the readings of collapsed meters so the heap does not grow with the history
+        if (event.getPath().getLastPathComponent() instanceof MeterTreeNode meterNode) {
+            unload(meterNode);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.tree;
+
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import de.schipplock.apps.stromzettel.model.Reading;
+
+import javax.swing.*;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeCellRenderer;
+import java.awt.*;
+import java.io.Serial;
+
+// paints meters and readings as plain text, no HTML has to be built and parsed for every visible row
+public class MeterTreeCellRenderer extends DefaultTreeCellRenderer {
+
+    @Serial
+    private static final long serialVersionUID = 4391752218405342315L;
+
+    private static final Color DATE_COLOR = Color.decode("#41474d");
+
+    private static final Color VALUE_COLOR = Color.decode("#151c16");
+
+    private static final Color UNIT_COLOR = Color.decode("#19bf17");
+
+    private static final String SEPARATOR = " | ";
+
+    private static final String UNIT = " kwH";
+
+    private final ReadingCell readingCell = new ReadingCell();
+
+    private Font treeFont;
+
+    private Font meterFont;
+
+    @Override
+    public Component getTreeCellRendererComponent(JTree tree, Object value, boolean selected, boolean expanded, boolean leaf, int row, boolean hasFocus) {
+        var userObject = value instanceof DefaultMutableTreeNode node ? node.getUserObject() : value;
+        if (userObject instanceof Reading reading) {
+            readingCell.set(reading, tree.getFont(), getLeafIcon(), selected ? getBackgroundSelectionColor() : null, selected ? getTextSelectionColor() : null);
+            return readingCell;
+        }
+        super.getTreeCellRendererComponent(tree, value, selected, expanded, leaf, row, hasFocus);
+        if (userObject instanceof ElectricityMeter meter) {
+            if (!tree.getFont().equals(treeFont)) {
+                treeFont = tree.getFont();
+                meterFont = treeFont.deriveFont(Font.BOLD);
+            }
+            setFont(meterFont);
+            setText(meter.getName());
+        } else {
+            setFont(tree.getFont());
+        }
+        return this;
+    }
+
+    // one reused component for every reading row, the fonts are only derived again when the tree font changes
+    private static class ReadingCell extends JComponent {
+
+        @Serial
+        private static final long serialVersionUID = -2710497452290837160L;
+
+        private static final int ICON_GAP = 4;
+
+        private Font[] fonts;
+
+        private Font baseFont;
+
+        private Icon icon;
+
+        private Color background;
+
+        private Color foreground;
+
+        private String date;
+
+        private String value;
+
+        ReadingCell() {
+            setOpaque(false);
+        }
+
+        // background and foreground are only given for the selected row
+        void set(Reading reading, Font font, Icon icon, Color background, Color foreground) {
+            if (fonts == null || !font.equals(baseFont)) {
+                baseFont = font;
+                // date, value and unit
+                fonts = new Font[] { font, font.deriveFont(Font.BOLD), font.deriveFont(Font.BOLD, font.getSize2D() * 0.75f) };
+            }
+            this.icon = icon;
+            this.background = background;
+            this.foreground = foreground;
+            // LocalDate.toString is ISO_LOCAL_DATE without going through a DateTimeFormatter
+            this.date = reading.getReadingDate() == null ? SEPARATOR : reading.getReadingDate().toLocalDate() + SEPARATOR;
+            this.value = String.valueOf(reading.getReadingValue());
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            var dateMetrics = getFontMetrics(fonts[0]);
+            int width = dateMetrics.stringWidth(date) + getFontMetrics(fonts[1]).stringWidth(value) + getFontMetrics(fonts[2]).stringWidth(UNIT);
+            int height = Math.max(dateMetrics.getHeight(), getFontMetrics(fonts[1]).getHeight());
+            if (icon != null) {
+                width += icon.getIconWidth() + ICON_GAP;
+                height = Math.max(height, icon.getIconHeight());
+            }
+            return new Dimension(width + 2, height);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            var g2 = (Graphics2D) g.create();
+            try {
+                g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+                int x = 0;
+                if (icon != null) {
+                    icon.paintIcon(this, g2, x, (getHeight() - icon.getIconHeight()) / 2);
+                    x += icon.getIconWidth() + ICON_GAP;
+                }
+                if (background != null) {
+                    g2.setColor(background);
+                    g2.fillRect(x, 0, getWidth() - x, getHeight());
+                }
+                int baseline = (getHeight() + getFontMetrics(fonts[0]).getAscent() - getFontMetrics(fonts[0]).getDescent()) / 2;
+                x = draw(g2, date, fonts[0], DATE_COLOR, x, baseline);
+                x = draw(g2, value, fonts[1], VALUE_COLOR, x, baseline);
+                draw(g2, UNIT, fonts[2], UNIT_COLOR, x, baseline);
+            } finally {
+                g2.dispose();
+            }
+        }
+
+        private int draw(Graphics2D g2, String text, Font font, Color color, int x, int baseline) {
+            g2.setFont(font);
+            g2.setColor(foreground != null ? foreground : color);
+            g2.drawString(text, x, baseline);
+            return x + g2.getFontMetrics().stringWidth(text);
+        }
+    }
+}
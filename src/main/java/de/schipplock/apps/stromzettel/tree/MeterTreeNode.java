@@ -0,0 +1,83 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.tree;
+
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import de.schipplock.apps.stromzettel.model.Reading;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import java.io.Serial;
+
+public class MeterTreeNode extends DefaultMutableTreeNode {
+
+    @Serial
+    private static final long serialVersionUID = -3528613893512346730L;
+
+    private boolean loaded;
+
+    private int generation;
+
+    public MeterTreeNode(ElectricityMeter meter) {
+        super(meter, true);
+    }
+
+    public ElectricityMeter getMeter() {
+        return (ElectricityMeter) getUserObject();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public void setLoaded(boolean loaded) {
+        this.loaded = loaded;
+    }
+
+    // bumped whenever the loaded readings are thrown away, so late pages can be recognized and dropped
+    public int getGeneration() {
+        return generation;
+    }
+
+    public void nextGeneration() {
+        generation++;
+    }
+
+    public Reading getLastLoadedReading() {
+        for (int i = getChildCount() - 1; i >= 0; i--) {
+            if (((DefaultMutableTreeNode) getChildAt(i)).getUserObject() instanceof Reading reading) {
+                return reading;
+            }
+        }
+        return null;
+    }
+
+    public DefaultMutableTreeNode getPlaceholderNode() {
+        if (getChildCount() > 0 && (getLastChild() instanceof MoreReadingsTreeNode || getLastChild() instanceof LoadingTreeNode)) {
+            return (DefaultMutableTreeNode) getLastChild();
+        }
+        return null;
+    }
+
+    public boolean isLoading() {
+        return getChildCount() > 0 && getLastChild() instanceof LoadingTreeNode;
+    }
+
+    @Override
+    public boolean isLeaf() {
+        // readings are only fetched on expansion, so a meter always has to look expandable
+        return false;
+    }
+}
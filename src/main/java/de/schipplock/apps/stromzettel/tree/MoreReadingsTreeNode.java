@@ -0,0 +1,29 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.tree;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import java.io.Serial;
+
+public class MoreReadingsTreeNode extends DefaultMutableTreeNode {
+
+    @Serial
+    private static final long serialVersionUID = 2215290137916307519L;
+
+    public MoreReadingsTreeNode(String caption) {
+        super(caption, false);
+    }
+}
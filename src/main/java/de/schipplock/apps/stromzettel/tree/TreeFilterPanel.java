@@ -0,0 +1,169 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.tree;
+
+import de.schipplock.apps.stromzettel.dao.ReadingFilter;
+import de.schipplock.apps.stromzettel.i18n.Messages;
+import net.miginfocom.swing.MigLayout;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.io.Serial;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.function.BiConsumer;
+
+// a search field for meter names and, behind a toggle, date and value bounds for the readings; the filter is handed
+// on once typing pauses, so a fast typist does not start a query per keystroke
+public class TreeFilterPanel extends JPanel {
+
+    @Serial
+    private static final long serialVersionUID = -2195784906414861927L;
+
+    private static final int TYPING_PAUSE_MILLIS = 150;
+
+    private final JTextField meterNameField = new JTextField();
+
+    private final JTextField fromField = new JTextField();
+
+    private final JTextField toField = new JTextField();
+
+    private final JTextField minValueField = new JTextField();
+
+    private final JTextField maxValueField = new JTextField();
+
+    private final JPanel readingsPanel = new JPanel(new MigLayout("insets 0, fillx", "[grow, fill][grow, fill]"));
+
+    private final Timer typingPause;
+
+    public TreeFilterPanel(Icon readingFilterIcon, BiConsumer<String, ReadingFilter> filterListener) {
+        super(new MigLayout("insets 0, fillx, hidemode 3", "[grow, fill][]"));
+        typingPause = new Timer(TYPING_PAUSE_MILLIS, e -> filterListener.accept(getMeterName(), getReadingFilter()));
+        typingPause.setRepeats(false);
+
+        setup(meterNameField, "filter.meterName.placeholder", "filter.meterName.tooltip");
+        setup(fromField, "filter.from.placeholder", "filter.date.tooltip");
+        setup(toField, "filter.to.placeholder", "filter.date.tooltip");
+        setup(minValueField, "filter.minValue.placeholder", "filter.value.tooltip");
+        setup(maxValueField, "filter.maxValue.placeholder", "filter.value.tooltip");
+
+        var readingFilterToggle = new JToggleButton(readingFilterIcon);
+        readingFilterToggle.setToolTipText(Messages.get("filter.readings.tooltip"));
+        readingFilterToggle.addActionListener(e -> {
+            readingsPanel.setVisible(readingFilterToggle.isSelected());
+            // hidden bounds would still filter without anybody seeing why
+            if (!readingFilterToggle.isSelected()) {
+                fromField.setText("");
+                toField.setText("");
+                minValueField.setText("");
+                maxValueField.setText("");
+            }
+            revalidate();
+        });
+
+        readingsPanel.add(fromField);
+        readingsPanel.add(toField, "wrap");
+        readingsPanel.add(minValueField);
+        readingsPanel.add(maxValueField);
+        readingsPanel.setVisible(false);
+
+        add(meterNameField);
+        add(readingFilterToggle, "wrap");
+        add(readingsPanel, "span");
+    }
+
+    private void setup(JTextField field, String placeholderKey, String tooltipKey) {
+        field.putClientProperty("JTextField.placeholderText", Messages.get(placeholderKey));
+        field.setToolTipText(Messages.get(tooltipKey));
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                typingPause.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                typingPause.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+    }
+
+    public String getMeterName() {
+        return meterNameField.getText();
+    }
+
+    // a bound that cannot be read yet, e.g. a date typed halfway, is left out and its field marked
+    public ReadingFilter getReadingFilter() {
+        var from = parseDate(fromField);
+        var to = parseDate(toField);
+        return new ReadingFilter(from == null ? null : from.atStartOfDay(), to == null ? null : endOf(toField.getText().strip(), to),
+                parseValue(minValueField), parseValue(maxValueField));
+    }
+
+    // a year, a month or a day, the start of it
+    private static LocalDate parseDate(JTextField field) {
+        var text = field.getText().strip();
+        LocalDate date = null;
+        try {
+            if (text.length() == 4) {
+                date = LocalDate.of(Integer.parseInt(text), 1, 1);
+            } else if (text.length() == 7) {
+                date = YearMonth.parse(text).atDay(1);
+            } else if (!text.isEmpty()) {
+                date = LocalDate.parse(text);
+            }
+        } catch (NumberFormatException | DateTimeParseException ex) {
+            markInvalid(field, true);
+            return null;
+        }
+        markInvalid(field, false);
+        return date;
+    }
+
+    // "to" includes the whole year, month or day that was typed
+    private static LocalDateTime endOf(String text, LocalDate start) {
+        if (text.length() == 4) return start.plusYears(1).atStartOfDay();
+        if (text.length() == 7) return start.plusMonths(1).atStartOfDay();
+        return start.plusDays(1).atStartOfDay();
+    }
+
+    private static Long parseValue(JTextField field) {
+        var text = field.getText().strip();
+        if (text.isEmpty()) {
+            markInvalid(field, false);
+            return null;
+        }
+        try {
+            long value = Long.parseLong(text);
+            markInvalid(field, false);
+            return value;
+        } catch (NumberFormatException ex) {
+            markInvalid(field, true);
+            return null;
+        }
+    }
+
+    private static void markInvalid(JTextField field, boolean invalid) {
+        field.putClientProperty("JComponent.outline", invalid ? "error" : null);
+    }
+}
@@ -0,0 +1,21 @@
+-- the schema as hibernate generated it before migrations were versioned
+create sequence ELECTRICITY_METER_SEQ as integer start with 1 increment by 1;
+
+create sequence READINGS_SEQUENCE as integer start with 1 increment by 1;
+
+create table ELECTRICITY_METERS (
+    ID bigint not null,
+    KWHPRICE double not null,
+    NAME varchar(255),
+    primary key (ID)
+);
+
+create table READINGS (
+    ID bigint not null,
+    READINGDATE timestamp,
+    READINGVALUE bigint,
+    ELECTRICITY_METER_ID bigint,
+    primary key (ID)
+);
+
+alter table READINGS add constraint FKEDGG2M1S7SVYGCENCX3OD5Q1 foreign key (ELECTRICITY_METER_ID) references ELECTRICITY_METERS (ID);
@@ -0,0 +1,2 @@
+-- serves paging, the previous reading lookup and the series queries
+create index IDX_READINGS_METER_DATE on READINGS (ELECTRICITY_METER_ID, READINGDATE);
@@ -0,0 +1,21 @@
+-- the single price of every meter becomes its first tariff
+create sequence TARIFFS_SEQUENCE as integer start with 1 increment by 50;
+
+create table TARIFFS (
+    ID bigint not null,
+    ELECTRICITY_METER_ID bigint not null,
+    VALIDFROM timestamp not null,
+    KWHPRICE double not null,
+    OFFPEAKSTART time,
+    OFFPEAKEND time,
+    OFFPEAKKWHPRICE double,
+    primary key (ID)
+);
+
+alter table TARIFFS add constraint FK_TARIFFS_METER foreign key (ELECTRICITY_METER_ID) references ELECTRICITY_METERS (ID);
+
+create index IDX_TARIFFS_METER_VALIDFROM on TARIFFS (ELECTRICITY_METER_ID, VALIDFROM);
+
+-- next value for hands out 1, 51, 101, ... so the rows never collide with the blocks hibernate allocates later
+insert into TARIFFS (ID, ELECTRICITY_METER_ID, VALIDFROM, KWHPRICE)
+select next value for TARIFFS_SEQUENCE, ID, timestamp('1970-01-01 00:00:00'), KWHPRICE from ELECTRICITY_METERS;
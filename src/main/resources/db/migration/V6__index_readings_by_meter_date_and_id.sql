@@ -0,0 +1,5 @@
+-- every reading query orders by date and id, with the id in the index Derby no longer sorts all readings of a meter
+-- to find one neighbour, and since Derby cannot scan an index backwards newest-first gets an index of its own
+drop index IDX_READINGS_METER_DATE;
+create index IDX_READINGS_METER_DATE on READINGS (ELECTRICITY_METER_ID, READINGDATE, ID);
+create index IDX_READINGS_METER_DATE_DESC on READINGS (ELECTRICITY_METER_ID, READINGDATE desc, ID desc);
@@ -0,0 +1,3 @@
+-- lets the reading filter look up a value range without walking the whole history of a meter, the dates stay out of
+-- it so Derby never prefers it over the date indexes for the queries that order by date
+create index IDX_READINGS_METER_VALUE on READINGS (ELECTRICITY_METER_ID, READINGVALUE);
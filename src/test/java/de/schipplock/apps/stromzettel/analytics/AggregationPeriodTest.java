@@ -0,0 +1,83 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.analytics;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AggregationPeriodTest {
+
+    private static final long DAY = 86_400;
+
+    // every day from 1899 to 2101 at a few times of the day, covers 1900 (no leap year), 2000 (leap year) and the epoch
+    @Test
+    void startAndNextMatchJavaTime() {
+        for (var date = LocalDate.of(1899, 1, 1); date.isBefore(LocalDate.of(2102, 1, 1)); date = date.plusDays(1)) {
+            for (long secondOfDay : new long[] { 0, 1, 43_200, DAY - 1 }) {
+                long epochSecond = toEpochSecond(date.atStartOfDay()) + secondOfDay;
+                assertPeriod(AggregationPeriod.DAY, epochSecond, date, date.plusDays(1));
+                var monday = date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                assertPeriod(AggregationPeriod.WEEK, epochSecond, monday, monday.plusWeeks(1));
+                assertPeriod(AggregationPeriod.MONTH, epochSecond, date.withDayOfMonth(1), date.withDayOfMonth(1).plusMonths(1));
+                assertPeriod(AggregationPeriod.YEAR, epochSecond, date.withDayOfYear(1), date.withDayOfYear(1).plusYears(1));
+            }
+        }
+    }
+
+    @Test
+    void leapDays() {
+        assertPeriod(AggregationPeriod.MONTH, at(2000, 2, 29), LocalDate.of(2000, 2, 1), LocalDate.of(2000, 3, 1));
+        assertPeriod(AggregationPeriod.MONTH, at(1900, 2, 28), LocalDate.of(1900, 2, 1), LocalDate.of(1900, 3, 1));
+        assertPeriod(AggregationPeriod.DAY, at(2024, 2, 29), LocalDate.of(2024, 2, 29), LocalDate.of(2024, 3, 1));
+        assertPeriod(AggregationPeriod.YEAR, at(2024, 12, 31), LocalDate.of(2024, 1, 1), LocalDate.of(2025, 1, 1));
+    }
+
+    @Test
+    void yearBoundaries() {
+        assertPeriod(AggregationPeriod.YEAR, at(2023, 12, 31) + DAY - 1, LocalDate.of(2023, 1, 1), LocalDate.of(2024, 1, 1));
+        assertPeriod(AggregationPeriod.YEAR, at(2024, 1, 1), LocalDate.of(2024, 1, 1), LocalDate.of(2025, 1, 1));
+        assertPeriod(AggregationPeriod.MONTH, at(1969, 12, 31) + DAY - 1, LocalDate.of(1969, 12, 1), LocalDate.of(1970, 1, 1));
+        assertPeriod(AggregationPeriod.DAY, -1, LocalDate.of(1969, 12, 31), LocalDate.of(1970, 1, 1));
+    }
+
+    // ISO weeks start on monday, also when the week reaches into the previous year
+    @Test
+    void isoWeekStarts() {
+        assertPeriod(AggregationPeriod.WEEK, at(2021, 1, 3), LocalDate.of(2020, 12, 28), LocalDate.of(2021, 1, 4));
+        assertPeriod(AggregationPeriod.WEEK, at(2021, 1, 4), LocalDate.of(2021, 1, 4), LocalDate.of(2021, 1, 11));
+        assertPeriod(AggregationPeriod.WEEK, at(2025, 1, 1), LocalDate.of(2024, 12, 30), LocalDate.of(2025, 1, 6));
+        assertPeriod(AggregationPeriod.WEEK, at(1970, 1, 1), LocalDate.of(1969, 12, 29), LocalDate.of(1970, 1, 5));
+    }
+
+    private static void assertPeriod(AggregationPeriod period, long epochSecond, LocalDate start, LocalDate next) {
+        assertEquals(toEpochSecond(start.atStartOfDay()), period.start(epochSecond), () -> period + " start of " + epochSecond);
+        assertEquals(toEpochSecond(next.atStartOfDay()), period.next(epochSecond), () -> period + " next of " + epochSecond);
+    }
+
+    private static long at(int year, int month, int day) {
+        return toEpochSecond(LocalDate.of(year, month, day).atStartOfDay());
+    }
+
+    private static long toEpochSecond(LocalDateTime dateTime) {
+        return ConsumptionSeries.toEpochSecond(dateTime);
+    }
+}
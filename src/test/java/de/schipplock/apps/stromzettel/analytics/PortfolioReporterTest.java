@@ -0,0 +1,142 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.analytics;
+
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PortfolioReporterTest {
+
+    private static final int METERS = 200;
+
+    private static final long START = ConsumptionSeries.toEpochSecond(LocalDateTime.of(2020, 1, 1, 0, 0));
+
+    private static final long HOUR = 3_600;
+
+    private static final long YEAR = 365 * 24 * HOUR;
+
+    // more threads than the common pool may have on a build machine, so the meters really get split up
+    private static ForkJoinPool pool;
+
+    private static List<ElectricityMeter> meters;
+
+    private static Map<Long, ConsumptionSeries> series;
+
+    private static Map<Long, PriceSchedule> prices;
+
+    @BeforeAll
+    static void createPortfolio() {
+        pool = new ForkJoinPool(4);
+        var random = new Random(42);
+        meters = new ArrayList<>();
+        series = new HashMap<>();
+        prices = new HashMap<>();
+        for (long id = 1; id <= METERS; id++) {
+            var meter = new ElectricityMeter("meter " + id, 20 + random.nextInt(20));
+            meter.setId(id);
+            meters.add(meter);
+            // every tenth meter has no readings, every seventh none but its current price
+            if (id % 10 != 0) series.put(id, series(random));
+            if (id % 7 != 0) prices.put(id, schedule(random));
+        }
+    }
+
+    @AfterAll
+    static void shutdownPool() {
+        pool.shutdown();
+    }
+
+    // a reading every few hours over two years
+    private static ConsumptionSeries series(Random random) {
+        var builder = new ConsumptionSeries.Builder();
+        long epochSecond = START + random.nextInt(24) * HOUR;
+        long value = random.nextInt(10_000);
+        while (epochSecond < START + 2 * YEAR) {
+            builder.add(epochSecond, value);
+            epochSecond += (1 + random.nextInt(12)) * HOUR + random.nextInt(3_600);
+            value += random.nextInt(5);
+        }
+        return builder.build();
+    }
+
+    // a price change every few months, some with a night window that wraps around midnight
+    private static PriceSchedule schedule(Random random) {
+        var builder = new PriceSchedule.Builder();
+        builder.add(Long.MIN_VALUE, 25 + random.nextDouble() * 10);
+        for (long validFrom = START + random.nextInt(90) * 24 * HOUR; validFrom < START + 2 * YEAR; validFrom += (60 + random.nextInt(120)) * 24 * HOUR) {
+            double kwhPrice = 25 + random.nextDouble() * 20;
+            if (random.nextBoolean()) {
+                builder.add(validFrom, kwhPrice, 22 * 3_600, 6 * 3_600, kwhPrice / 2);
+            } else {
+                builder.add(validFrom, kwhPrice);
+            }
+        }
+        return builder.build();
+    }
+
+    @Test
+    void parallelReportEqualsSequentialReport() {
+        var reporter = new PortfolioReporter(pool);
+        long[][] ranges = {
+                { START, START + 2 * YEAR },
+                { START - YEAR, START + 3 * YEAR },
+                { START + 100 * 24 * HOUR + 1_234, START + 400 * 24 * HOUR + 5_678 },
+                { START + 30 * 24 * HOUR, START + 31 * 24 * HOUR },
+                { START + YEAR, START + YEAR }
+        };
+        for (var range : ranges) {
+            var parallel = reporter.report(meters, series, prices, range[0], range[1]);
+            var sequential = reporter.reportSequentially(meters, series, prices, range[0], range[1]);
+
+            assertEquals(sequential.getMeterReports().size(), parallel.getMeterReports().size());
+            for (int i = 0; i < sequential.getMeterReports().size(); i++) {
+                var expected = sequential.getMeterReports().get(i);
+                var actual = parallel.getMeterReports().get(i);
+                assertEquals(expected.getMeterId(), actual.getMeterId());
+                assertEquals(expected.getMeterName(), actual.getMeterName());
+                assertEquals(expected.getConsumption(), actual.getConsumption());
+                // exactly, both sides do the same arithmetic in the same order
+                assertEquals(expected.getCosts(), actual.getCosts());
+            }
+            assertEquals(sequential.getTotalConsumption(), parallel.getTotalConsumption());
+            assertEquals(sequential.getTotalCosts(), parallel.getTotalCosts());
+        }
+    }
+
+    @Test
+    void reportCoversEveryMeterInOrder() {
+        var report = new PortfolioReporter(pool).report(meters, series, prices, START, START + 2 * YEAR);
+        assertEquals(METERS, report.getMeterReports().size());
+        for (int i = 0; i < METERS; i++) {
+            assertEquals(meters.get(i).getId(), report.getMeterReports().get(i).getMeterId());
+        }
+        assertTrue(report.getTotalCosts() > 0);
+        assertEquals(0, report.getMeterReports().get(9).getConsumption());
+    }
+}
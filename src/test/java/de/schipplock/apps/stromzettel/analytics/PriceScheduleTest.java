@@ -0,0 +1,167 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.analytics;
+
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import de.schipplock.apps.stromzettel.model.Tariff;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Random;
+
+import static de.schipplock.apps.stromzettel.analytics.ConsumptionSeries.toEpochSecond;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PriceScheduleTest {
+
+    private static final double DELTA = 1e-9;
+
+    private static final ElectricityMeter METER = new ElectricityMeter("meter", 30);
+
+    // 30 ct until noon on new year's day 2024, 40 ct from then on
+    private static final PriceSchedule PRICE_CHANGE = PriceSchedule.of(List.of(
+            new Tariff(METER, Tariff.BEGINNING, 30),
+            new Tariff(METER, LocalDateTime.of(2024, 1, 1, 12, 0), 40)));
+
+    // 30 ct, 20 ct from 22:00 to 06:00
+    private static final PriceSchedule NIGHT = PriceSchedule.of(List.of(offPeak(Tariff.BEGINNING, 30, 22, 6, 20)));
+
+    @Test
+    void splitsAnIntervalAtATariffBoundary() {
+        // 10 kWh over a day, half of it before noon
+        assertEquals(3.5, PRICE_CHANGE.costs(at(2024, 1, 1, 0), at(2024, 1, 2, 0), 10), DELTA);
+        // a quarter before noon
+        assertEquals(3.75, PRICE_CHANGE.costs(at(2024, 1, 1, 6), at(2024, 1, 2, 6), 10), DELTA);
+    }
+
+    @Test
+    void anIntervalEndingOrStartingAtTheBoundaryHasOneTariff() {
+        assertEquals(3.0, PRICE_CHANGE.costs(at(2024, 1, 1, 0), at(2024, 1, 1, 12), 10), DELTA);
+        assertEquals(4.0, PRICE_CHANGE.costs(at(2024, 1, 1, 12), at(2024, 1, 2, 0), 10), DELTA);
+        assertEquals(30, PRICE_CHANGE.priceAt(at(2024, 1, 1, 12) - 1), DELTA);
+        assertEquals(40, PRICE_CHANGE.priceAt(at(2024, 1, 1, 12)), DELTA);
+    }
+
+    @Test
+    void splitsAnIntervalOverSeveralTariffs() {
+        var prices = PriceSchedule.of(List.of(
+                new Tariff(METER, Tariff.BEGINNING, 30),
+                new Tariff(METER, LocalDateTime.of(2024, 1, 2, 0, 0), 60),
+                new Tariff(METER, LocalDateTime.of(2024, 1, 3, 0, 0), 90)));
+
+        // one day at each price
+        assertEquals(6.0, prices.costs(at(2024, 1, 1, 0), at(2024, 1, 4, 0), 10), DELTA);
+    }
+
+    @Test
+    void pricesTheOffPeakWindowAcrossMidnight() {
+        assertEquals(20, NIGHT.priceAt(at(2024, 1, 1, 22)), DELTA);
+        assertEquals(20, NIGHT.priceAt(at(2024, 1, 2, 0)), DELTA);
+        assertEquals(20, NIGHT.priceAt(at(2024, 1, 2, 6) - 1), DELTA);
+        assertEquals(30, NIGHT.priceAt(at(2024, 1, 2, 6)), DELTA);
+        assertEquals(30, NIGHT.priceAt(at(2024, 1, 1, 22) - 1), DELTA);
+    }
+
+    @Test
+    void splitsAnIntervalAtTheEdgesOfTheOffPeakWindow() {
+        // entirely within the window, over midnight
+        assertEquals(2.0, NIGHT.costs(at(2024, 1, 1, 23), at(2024, 1, 2, 1), 10), DELTA);
+        // an hour either side of where the window starts and of where it ends
+        assertEquals(2.5, NIGHT.costs(at(2024, 1, 1, 21), at(2024, 1, 1, 23), 10), DELTA);
+        assertEquals(2.5, NIGHT.costs(at(2024, 1, 2, 5), at(2024, 1, 2, 7), 10), DELTA);
+        // a whole day is 16 hours at 30 ct and 8 at 20 ct, wherever it starts
+        assertEquals(6.4, NIGHT.costs(at(2024, 1, 1, 0), at(2024, 1, 2, 0), 24), DELTA);
+        assertEquals(6.4, NIGHT.costs(at(2024, 1, 1, 23), at(2024, 1, 2, 23), 24), DELTA);
+        assertEquals(64.0, NIGHT.costs(at(2024, 1, 1, 3), at(2024, 1, 11, 3), 240), DELTA);
+    }
+
+    @Test
+    void pricesTheOffPeakWindowBeforeTheEpoch() {
+        assertEquals(2.0, NIGHT.costs(at(1969, 12, 31, 23), at(1970, 1, 1, 1), 10), DELTA);
+        assertEquals(20, NIGHT.priceAt(-1), DELTA);
+        assertEquals(30, NIGHT.priceAt(at(1969, 12, 31, 12)), DELTA);
+    }
+
+    // the closed form against adding up every minute, including a price change in the middle of the night
+    @Test
+    void offPeakCostsMatchAMinuteByMinuteSum() {
+        var prices = PriceSchedule.of(List.of(
+                offPeak(Tariff.BEGINNING, 30, 22, 6, 20),
+                offPeak(LocalDateTime.of(2024, 3, 10, 2, 0), 35, 1, 5, 15),
+                new Tariff(METER, LocalDateTime.of(2024, 3, 14, 0, 30), 40)));
+        var random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            long from = at(2024, 3, 5, 0) + 60L * random.nextInt(14 * 24 * 60);
+            long to = from + 60L * (1 + random.nextInt(5 * 24 * 60));
+            double priceMinutes = 0;
+            for (long minute = from; minute < to; minute += 60) {
+                priceMinutes += prices.priceAt(minute);
+            }
+            long consumption = 1 + random.nextInt(100);
+            assertEquals(consumption * priceMinutes / ((to - from) / 60) / 100, prices.costs(from, to, consumption), 1e-6);
+        }
+    }
+
+    @Test
+    void theFirstTariffCoversEverythingBeforeIt() {
+        var prices = PriceSchedule.of(List.of(
+                new Tariff(METER, LocalDateTime.of(2024, 1, 1, 0, 0), 30),
+                new Tariff(METER, LocalDateTime.of(2024, 6, 1, 0, 0), 40)));
+
+        assertEquals(0, prices.indexAt(at(2023, 6, 1, 0)));
+        assertEquals(30, prices.priceAt(at(2023, 6, 1, 0)), DELTA);
+        assertEquals(3.0, prices.costs(at(2023, 3, 1, 0), at(2023, 4, 1, 0), 10), DELTA);
+        // reaching into the first tariff
+        assertEquals(3.0, prices.costs(at(2023, 12, 31, 12), at(2024, 1, 1, 12), 10), DELTA);
+        // and over the second one
+        assertEquals(3.5, prices.costs(at(2024, 5, 31, 0), at(2024, 6, 2, 0), 10), DELTA);
+    }
+
+    @Test
+    void aCursorGivesTheSameCostsForIntervalsOutOfOrder() {
+        var cursor = PRICE_CHANGE.cursor();
+
+        assertEquals(4.0, cursor.costs(at(2024, 2, 1, 0), at(2024, 2, 2, 0), 10), DELTA);
+        assertEquals(3.0, cursor.costs(at(2023, 2, 1, 0), at(2023, 2, 2, 0), 10), DELTA);
+        assertEquals(3.5, cursor.costs(at(2024, 1, 1, 0), at(2024, 1, 2, 0), 10), DELTA);
+    }
+
+    @Test
+    void anEmptyIntervalIsPricedAtItsEnd() {
+        assertEquals(4.0, PRICE_CHANGE.costs(at(2024, 1, 1, 12), at(2024, 1, 1, 12), 10), DELTA);
+        assertEquals(2.0, NIGHT.costs(at(2024, 1, 1, 23), at(2024, 1, 1, 23), 10), DELTA);
+    }
+
+    @Test
+    void anEmptyScheduleCostsNothing() {
+        var prices = PriceSchedule.of(List.of());
+
+        assertEquals(0, prices.priceAt(at(2024, 1, 1, 0)), DELTA);
+        assertEquals(0, prices.costs(at(2024, 1, 1, 0), at(2024, 1, 2, 0), 10), DELTA);
+    }
+
+    private static Tariff offPeak(LocalDateTime validFrom, double kwhPrice, int startHour, int endHour, double offPeakKwhPrice) {
+        var tariff = new Tariff(METER, validFrom, kwhPrice);
+        tariff.setOffPeak(LocalTime.of(startHour, 0), LocalTime.of(endHour, 0), offPeakKwhPrice);
+        return tariff;
+    }
+
+    private static long at(int year, int month, int day, int hour) {
+        return toEpochSecond(LocalDateTime.of(year, month, day, hour, 0));
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.dao;
+
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import de.schipplock.apps.stromzettel.model.Reading;
+import de.schipplock.apps.stromzettel.model.Tariff;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static java.lang.String.format;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// the rollups are kept up to date reading by reading and batch by batch, after every change they have to look exactly
+// like a rebuild of the whole table from the readings
+class ConsumptionRollupsTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2023, 11, 20, 6, 0);
+
+    private static Database database;
+
+    private static ElectricityMeterDAO meterDAO;
+
+    private static ReadingDAO readingDAO;
+
+    private static RollupDAO rollupDAO;
+
+    private ElectricityMeter meter;
+
+    @BeforeAll
+    static void openDatabase() {
+        database = new Database(Map.of("jakarta.persistence.jdbc.url", "jdbc:derby:memory:ConsumptionRollupsTest;create=true"));
+        meterDAO = new ElectricityMeterDAO(database);
+        readingDAO = new ReadingDAO(database);
+        rollupDAO = new RollupDAO(database);
+    }
+
+    @AfterAll
+    static void closeDatabase() {
+        database.close();
+    }
+
+    // a price change in the middle of the history and an off-peak window across midnight, so intervals get split
+    @BeforeEach
+    void createMeter() {
+        meter = meterDAO.merge(new ElectricityMeter("meter", 30));
+        var tariff = new Tariff(meter, LocalDateTime.of(2024, 1, 10, 12, 0), 35);
+        tariff.setOffPeak(LocalTime.of(22, 0), LocalTime.of(6, 0), 20.0);
+        new TariffDAO(database).persist(tariff);
+    }
+
+    @Test
+    void insertsInDateOrder() {
+        for (var reading : readings(120)) {
+            readingDAO.persist(reading);
+        }
+
+        assertMatchesFullRebuild();
+    }
+
+    @Test
+    void insertsOutOfOrder() {
+        var readings = readings(120);
+        Collections.shuffle(readings, new Random(7));
+        for (var reading : readings) {
+            readingDAO.persist(reading);
+            assertMatchesFullRebuild();
+        }
+    }
+
+    @Test
+    void editsValuesAndDates() {
+        readingDAO.persistAll(readings(120));
+        var random = new Random(11);
+        var history = readingDAO.findPage(meter, null, 200);
+        for (int i = 0; i < 40; i++) {
+            var reading = history.get(random.nextInt(history.size()));
+            if (random.nextBoolean()) {
+                reading.setReadingValue(reading.getReadingValue() + random.nextInt(50) - 20);
+            } else {
+                // across days, months and the turn of the year
+                reading.setReadingDate(reading.getReadingDate().plusHours(random.nextInt(24 * 40) - 24 * 20));
+            }
+            readingDAO.merge(reading);
+            assertMatchesFullRebuild();
+        }
+    }
+
+    @Test
+    void deletesTheFirstTheLastAndReadingsInBetween() {
+        readingDAO.persistAll(readings(120));
+        var history = new ArrayList<>(readingDAO.findPage(meter, null, 200));
+        readingDAO.delete(history.remove(0));
+        assertMatchesFullRebuild();
+        readingDAO.delete(history.remove(history.size() - 1));
+        assertMatchesFullRebuild();
+        var random = new Random(13);
+        while (history.size() > 1) {
+            readingDAO.delete(history.remove(random.nextInt(history.size())));
+            assertMatchesFullRebuild();
+        }
+        readingDAO.delete(history.remove(0));
+
+        assertEquals(List.of(), rollups());
+    }
+
+    // an export is newest first, imported as it is every batch lands before everything already committed
+    @Test
+    void importsBatchesOutOfOrder() {
+        var readings = readings(600);
+        Collections.reverse(readings);
+        for (int from = 0; from < readings.size(); from += 70) {
+            readingDAO.persistAll(readings.subList(from, Math.min(from + 70, readings.size())));
+            assertMatchesFullRebuild();
+        }
+    }
+
+    @Test
+    void importsABatchIntoTheMiddleOfTheHistory() {
+        var readings = readings(300);
+        var backfill = new ArrayList<Reading>();
+        for (int i = 0; i < readings.size(); i += 3) backfill.add(readings.get(i));
+        readings.removeAll(backfill);
+        readingDAO.persistAll(readings);
+        Collections.shuffle(backfill, new Random(17));
+
+        readingDAO.persistAll(backfill);
+
+        assertMatchesFullRebuild();
+    }
+
+    @Test
+    void mixesEverything() {
+        var random = new Random(19);
+        var pending = readings(400);
+        Collections.shuffle(pending, random);
+        while (!pending.isEmpty()) {
+            int size = Math.min(pending.size(), 1 + random.nextInt(30));
+            readingDAO.persistAll(new ArrayList<>(pending.subList(0, size)));
+            pending.subList(0, size).clear();
+            var history = readingDAO.findPage(meter, null, 1000);
+            var reading = history.get(random.nextInt(history.size()));
+            if (random.nextBoolean()) {
+                readingDAO.delete(reading);
+            } else {
+                reading.setReadingDate(reading.getReadingDate().minusHours(random.nextInt(24 * 60)));
+                reading.setReadingValue(reading.getReadingValue() + random.nextInt(30));
+                readingDAO.merge(reading);
+            }
+            assertMatchesFullRebuild();
+        }
+    }
+
+    // one reading every 7 to 31 hours from the end of november, so the readings cross days, months and a year
+    private List<Reading> readings(int count) {
+        var random = new Random(count);
+        List<Reading> readings = new ArrayList<>();
+        var date = START;
+        long value = 1000;
+        for (int i = 0; i < count; i++) {
+            var reading = new Reading(value, date);
+            reading.setElectricityMeter(meter);
+            readings.add(reading);
+            date = date.plusMinutes(7 * 60 + random.nextInt(24 * 60));
+            value += random.nextInt(25);
+        }
+        return readings;
+    }
+
+    private void assertMatchesFullRebuild() {
+        var incremental = rollups();
+        rollupDAO.rebuild();
+        assertEquals(rollups(), incremental);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> rollups() {
+        return database.read(em -> {
+            List<Object[]> rows = em.createNativeQuery("""
+                    select PERIOD, PERIOD_START, CONSUMPTION, COSTS from CONSUMPTION_ROLLUPS
+                    where ELECTRICITY_METER_ID = ? order by PERIOD, PERIOD_START""")
+                    .setParameter(1, meter.getId())
+                    .getResultList();
+            List<String> rollups = new ArrayList<>();
+            // costs are summed in a different order, only their cents have to agree
+            rows.forEach(row -> rollups.add(format(Locale.ROOT, "%s %s %s %.6f", row[0], row[1], row[2], ((Number) row[3]).doubleValue())));
+            return rollups;
+        });
+    }
+}
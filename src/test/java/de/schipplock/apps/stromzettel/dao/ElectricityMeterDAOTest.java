@@ -0,0 +1,119 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.dao;
+
+import de.schipplock.apps.stromzettel.analytics.AggregationPeriod;
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import de.schipplock.apps.stromzettel.model.Reading;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// the tree works on detached meters and on reading copies from findPage, merging such a meter must not bring back
+// what was changed through the copies
+class ElectricityMeterDAOTest {
+
+    private static Database database;
+
+    private static ElectricityMeterDAO meterDAO;
+
+    private static ReadingDAO readingDAO;
+
+    private static RollupDAO rollupDAO;
+
+    @BeforeAll
+    static void openDatabase() {
+        database = new Database(Map.of("jakarta.persistence.jdbc.url", "jdbc:derby:memory:ElectricityMeterDAOTest;create=true"));
+        meterDAO = new ElectricityMeterDAO(database);
+        readingDAO = new ReadingDAO(database);
+        rollupDAO = new RollupDAO(database);
+    }
+
+    @AfterAll
+    static void closeDatabase() {
+        database.close();
+    }
+
+    @Test
+    void renamingAMeterKeepsDeletedReadingsDeletedAndEditsEdited() {
+        var meter = meterDAO.merge(new ElectricityMeter("rename", 30));
+        readingDAO.persist(reading(meter, 100, 2024, 1));
+        readingDAO.persist(reading(meter, 200, 2024, 2));
+        readingDAO.persist(reading(meter, 260, 2024, 3));
+        changeThroughThePage(meter);
+
+        meter.setName("renamed");
+        meterDAO.merge(meter);
+
+        assertHistory(meter);
+        assertEquals("renamed", meterDAO.findAll().stream().filter(meter::equals).findFirst().orElseThrow().getName());
+    }
+
+    @Test
+    void changingThePriceKeepsDeletedReadingsDeletedAndEditsEdited() {
+        var meter = meterDAO.merge(new ElectricityMeter("price", 30));
+        readingDAO.persist(reading(meter, 100, 2024, 1));
+        readingDAO.persist(reading(meter, 200, 2024, 2));
+        readingDAO.persist(reading(meter, 260, 2024, 3));
+        changeThroughThePage(meter);
+
+        meter.setKwhPrice(35);
+        meterDAO.merge(meter);
+
+        assertHistory(meter);
+    }
+
+    @Test
+    void mergeReturnsAMeterWithoutLoadedReadings() {
+        var meter = meterDAO.merge(new ElectricityMeter("fresh", 30));
+        readingDAO.persist(reading(meter, 100, 2024, 1));
+
+        meter.setName("fresh again");
+        assertFalse(meterDAO.merge(meter).isReadingsLoaded());
+    }
+
+    // what the tree does: delete the february reading and edit the january one through the page instances
+    private static void changeThroughThePage(ElectricityMeter meter) {
+        var page = readingDAO.findPage(meter, null, 10);
+        assertEquals(3, page.size());
+        readingDAO.delete(page.get(1));
+        var january = page.get(2);
+        january.setReadingValue(150L);
+        readingDAO.merge(january);
+    }
+
+    private static void assertHistory(ElectricityMeter meter) {
+        var page = readingDAO.findPage(meter, null, 10);
+        assertEquals(List.of(LocalDateTime.of(2024, 3, 1, 0, 0), LocalDateTime.of(2024, 1, 1, 0, 0)), page.stream().map(Reading::getReadingDate).toList());
+        assertEquals(List.of(260L, 150L), page.stream().map(Reading::getReadingValue).toList());
+        var months = rollupDAO.findRollups(meter, AggregationPeriod.MONTH);
+        assertEquals(110, months.getTotalConsumption());
+        assertEquals(1, months.size());
+    }
+
+    private static Reading reading(ElectricityMeter meter, long value, int year, int month) {
+        var reading = new Reading(value, LocalDateTime.of(year, month, 1, 0, 0));
+        reading.setElectricityMeter(meter);
+        return reading;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.dao;
+
+import de.schipplock.apps.stromzettel.model.Reading;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReadingFilterTest {
+
+    private static final LocalDateTime JANUARY = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private static final LocalDateTime FEBRUARY = LocalDateTime.of(2024, 2, 1, 0, 0);
+
+    private static final LocalDateTime MARCH = LocalDateTime.of(2024, 3, 1, 0, 0);
+
+    private static final LocalDateTime APRIL = LocalDateTime.of(2024, 4, 1, 0, 0);
+
+    @Test
+    void everyFilterNarrowsNone() {
+        assertTrue(ReadingFilter.NONE.narrows(ReadingFilter.NONE));
+        assertTrue(new ReadingFilter(FEBRUARY, null, null, null).narrows(ReadingFilter.NONE));
+        assertTrue(new ReadingFilter(null, MARCH, null, null).narrows(ReadingFilter.NONE));
+        assertTrue(new ReadingFilter(null, null, 10L, 20L).narrows(ReadingFilter.NONE));
+    }
+
+    @Test
+    void noneNarrowsNoBound() {
+        assertFalse(ReadingFilter.NONE.narrows(new ReadingFilter(FEBRUARY, null, null, null)));
+        assertFalse(ReadingFilter.NONE.narrows(new ReadingFilter(null, MARCH, null, null)));
+        assertFalse(ReadingFilter.NONE.narrows(new ReadingFilter(null, null, 10L, null)));
+        assertFalse(ReadingFilter.NONE.narrows(new ReadingFilter(null, null, null, 20L)));
+    }
+
+    @Test
+    void narrowsALaterFromAndAnEarlierTo() {
+        var february = new ReadingFilter(FEBRUARY, MARCH, null, null);
+
+        assertTrue(february.narrows(new ReadingFilter(JANUARY, APRIL, null, null)));
+        assertTrue(february.narrows(february));
+        assertTrue(february.narrows(new ReadingFilter(FEBRUARY, APRIL, null, null)));
+        assertFalse(february.narrows(new ReadingFilter(MARCH, APRIL, null, null)));
+        assertFalse(february.narrows(new ReadingFilter(JANUARY, FEBRUARY, null, null)));
+        assertFalse(new ReadingFilter(JANUARY, APRIL, null, null).narrows(february));
+    }
+
+    @Test
+    void aBoundThatIsDroppedWidens() {
+        assertFalse(new ReadingFilter(null, MARCH, null, null).narrows(new ReadingFilter(FEBRUARY, MARCH, null, null)));
+        assertFalse(new ReadingFilter(FEBRUARY, null, null, null).narrows(new ReadingFilter(FEBRUARY, MARCH, null, null)));
+        assertFalse(new ReadingFilter(null, null, 10L, null).narrows(new ReadingFilter(null, null, 10L, 20L)));
+    }
+
+    @Test
+    void narrowsAHigherMinimumAndALowerMaximum() {
+        var values = new ReadingFilter(null, null, 10L, 20L);
+
+        assertTrue(new ReadingFilter(null, null, 12L, 18L).narrows(values));
+        assertTrue(new ReadingFilter(null, null, 10L, 20L).narrows(values));
+        assertFalse(new ReadingFilter(null, null, 9L, 20L).narrows(values));
+        assertFalse(new ReadingFilter(null, null, 10L, 21L).narrows(values));
+    }
+
+    @Test
+    void needsEveryBoundToNarrow() {
+        var both = new ReadingFilter(FEBRUARY, MARCH, 10L, 20L);
+
+        assertTrue(new ReadingFilter(FEBRUARY, MARCH, 15L, 20L).narrows(both));
+        assertFalse(new ReadingFilter(JANUARY, MARCH, 15L, 20L).narrows(both));
+        assertFalse(new ReadingFilter(FEBRUARY, MARCH, 5L, 20L).narrows(both));
+    }
+
+    // what a narrower filter lets through, the wider one lets through as well
+    @Test
+    void aNarrowerFilterMatchesNothingTheWiderOneRejects() {
+        var wider = new ReadingFilter(JANUARY, APRIL, 10L, 30L);
+        var narrower = new ReadingFilter(FEBRUARY, MARCH, 15L, 20L);
+        for (var date = JANUARY.minusDays(5); date.isBefore(APRIL.plusDays(5)); date = date.plusHours(7)) {
+            for (long value = 0; value < 40; value++) {
+                var reading = new Reading(value, date);
+                assertTrue(!narrower.matches(reading) || wider.matches(reading));
+            }
+        }
+    }
+
+    @Test
+    void matchesFromInclusiveAndToExclusive() {
+        var february = new ReadingFilter(FEBRUARY, MARCH, 10L, 20L);
+
+        assertTrue(february.matches(new Reading(10L, FEBRUARY)));
+        assertTrue(february.matches(new Reading(20L, MARCH.minusSeconds(1))));
+        assertFalse(february.matches(new Reading(15L, MARCH)));
+        assertFalse(february.matches(new Reading(15L, FEBRUARY.minusSeconds(1))));
+        assertFalse(february.matches(new Reading(9L, FEBRUARY)));
+        assertFalse(february.matches(new Reading(21L, FEBRUARY)));
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.dao;
+
+import org.apache.derby.jdbc.EmbeddedDriver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// runs the real migrations on plain jdbc connections, every test gets a database of its own
+class SchemaMigratorTest {
+
+    private static int databases;
+
+    // Database.close shuts derby down and deregisters it, a driver of our own boots it again
+    private final EmbeddedDriver driver = new EmbeddedDriver();
+
+    private String url;
+
+    private Connection connection;
+
+    @BeforeEach
+    void createDatabase() throws SQLException {
+        url = "jdbc:derby:memory:SchemaMigratorTest" + ++databases;
+        connection = driver.connect(url + ";create=true", new Properties());
+    }
+
+    @AfterEach
+    void dropDatabase() throws SQLException {
+        connection.close();
+        try {
+            driver.connect(url + ";drop=true", new Properties());
+        } catch (SQLException ex) {
+            // derby reports a successful drop as an exception
+        }
+    }
+
+    @Test
+    void migratesAnEmptyDatabaseToTheLatestVersion() throws SQLException {
+        var migrator = new SchemaMigrator();
+
+        assertEquals(7, migrator.migrate(connection));
+        assertEquals(0, migrator.migrate(connection));
+        assertEquals(List.of("1 false", "2 false", "3 false", "4 false", "5 false", "6 false", "7 false"), versions());
+    }
+
+    @Test
+    void takesAHibernateSchemaAsBaselineAndMigratesItsReadings() throws SQLException {
+        createHibernateSchema();
+        execute("insert into ELECTRICITY_METERS (ID, KWHPRICE, NAME) values (1, 30, 'house')");
+        execute("insert into ELECTRICITY_METERS (ID, KWHPRICE, NAME) values (2, 40, 'garage')");
+        insertReading(1, 1, LocalDateTime.of(2023, 12, 31, 20, 0), 90);
+        insertReading(2, 1, LocalDateTime.of(2024, 1, 31, 8, 0), 100);
+        insertReading(3, 1, LocalDateTime.of(2024, 2, 1, 8, 0), 110);
+        insertReading(4, 1, LocalDateTime.of(2024, 2, 15, 8, 0), 130);
+        insertReading(5, 1, LocalDateTime.of(2024, 2, 15, 20, 0), 130);
+        insertReading(6, 1, null, 500);
+        insertReading(7, 2, LocalDateTime.of(2024, 2, 15, 9, 0), 1000);
+        insertReading(8, 2, LocalDateTime.of(2024, 3, 1, 9, 0), 1050);
+
+        assertEquals(5, new SchemaMigrator().migrate(connection));
+
+        assertEquals(List.of("1 true", "2 true", "3 false", "4 false", "5 false", "6 false", "7 false"), versions());
+        assertEquals(2, count("select count(*) from TARIFFS"));
+        // the first reading of a meter only opens its history, periods without consumption get no row
+        assertEquals(List.of(
+                "1 DAY 2024-01-31 10 3.0",
+                "1 DAY 2024-02-01 10 3.0",
+                "1 DAY 2024-02-15 20 6.0",
+                "1 MONTH 2024-01-01 10 3.0",
+                "1 MONTH 2024-02-01 30 9.0",
+                "1 YEAR 2024-01-01 40 12.0",
+                "2 DAY 2024-03-01 50 20.0",
+                "2 MONTH 2024-03-01 50 20.0",
+                "2 YEAR 2024-01-01 50 20.0"), rollups());
+    }
+
+    @Test
+    void refusesToRunWhenAnAppliedMigrationHasChanged() throws SQLException {
+        new SchemaMigrator().migrate(connection);
+        execute("update SCHEMA_VERSION set CHECKSUM = CHECKSUM + 1 where VERSION = 2");
+
+        var ex = assertThrows(IllegalStateException.class, () -> new SchemaMigrator().migrate(connection));
+        assertTrue(ex.getMessage().startsWith("migration 2 "), ex.getMessage());
+    }
+
+    @Test
+    void refusesToRunWhenTheRollupMigrationHasChanged() throws SQLException {
+        new SchemaMigrator().migrate(connection);
+        execute("update SCHEMA_VERSION set CHECKSUM = 2 where VERSION = 4");
+
+        assertThrows(IllegalStateException.class, () -> new SchemaMigrator().migrate(connection));
+    }
+
+    @Test
+    void acceptsTheChecksumTheRollupMigrationWasReleasedWith() throws SQLException {
+        new SchemaMigrator().migrate(connection);
+        execute("update SCHEMA_VERSION set CHECKSUM = 1 where VERSION = 4");
+
+        assertEquals(0, new SchemaMigrator().migrate(connection));
+    }
+
+    @Test
+    void doesNotRecordAMigrationThatFailed() throws SQLException {
+        var failing = new Migration() {
+            @Override
+            public int getVersion() {
+                return 2;
+            }
+
+            @Override
+            public String getDescription() {
+                return "failing";
+            }
+
+            @Override
+            public long getChecksum() {
+                return 0;
+            }
+
+            @Override
+            public void migrate(Connection connection) throws SQLException {
+                try (var statement = connection.createStatement()) {
+                    statement.executeUpdate("create table HALF_DONE (ID bigint)");
+                    statement.executeUpdate("insert into MISSING values (1)");
+                }
+            }
+        };
+        var migrator = new SchemaMigrator(List.of(new SqlMigration(1, "create_schema"), failing));
+
+        assertThrows(SQLException.class, () -> migrator.migrate(connection));
+        assertEquals(List.of("1 false"), versions());
+        assertEquals(0, count("select count(*) from SYS.SYSTABLES where TABLENAME = 'HALF_DONE'"));
+    }
+
+    private void createHibernateSchema() throws SQLException {
+        new SqlMigration(1, "create_schema").migrate(connection);
+        new SqlMigration(2, "index_readings_by_meter_and_date").migrate(connection);
+    }
+
+    private void insertReading(long id, long meterId, LocalDateTime date, long value) throws SQLException {
+        try (var statement = connection.prepareStatement("insert into READINGS (ID, READINGDATE, READINGVALUE, ELECTRICITY_METER_ID) values (?, ?, ?, ?)")) {
+            statement.setLong(1, id);
+            statement.setTimestamp(2, date == null ? null : Timestamp.valueOf(date));
+            statement.setLong(3, value);
+            statement.setLong(4, meterId);
+            statement.executeUpdate();
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (var statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+    }
+
+    private long count(String sql) throws SQLException {
+        try (var statement = connection.createStatement(); var resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private List<String> versions() throws SQLException {
+        List<String> versions = new ArrayList<>();
+        try (var statement = connection.createStatement();
+             var resultSet = statement.executeQuery("select VERSION, BASELINE from SCHEMA_VERSION order by VERSION")) {
+            while (resultSet.next()) {
+                versions.add(resultSet.getInt(1) + " " + resultSet.getBoolean(2));
+            }
+        }
+        return versions;
+    }
+
+    private List<String> rollups() throws SQLException {
+        List<String> rows = new ArrayList<>();
+        try (var statement = connection.createStatement();
+             var resultSet = statement.executeQuery("""
+                     select ELECTRICITY_METER_ID, PERIOD, PERIOD_START, CONSUMPTION, COSTS from CONSUMPTION_ROLLUPS
+                     order by ELECTRICITY_METER_ID, PERIOD, PERIOD_START""")) {
+            while (resultSet.next()) {
+                rows.add(resultSet.getLong(1) + " " + resultSet.getString(2) + " "
+                        + resultSet.getTimestamp(3).toLocalDateTime().toLocalDate() + " "
+                        + resultSet.getLong(4) + " " + resultSet.getDouble(5));
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.io;
+
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import de.schipplock.apps.stromzettel.model.Reading;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReadingCsvImporterTest {
+
+    private final ElectricityMeter meter = new ElectricityMeter("test", 30);
+
+    private final List<List<Reading>> batches = new ArrayList<>();
+
+    private final List<Long> progress = new ArrayList<>();
+
+    private long lastBytes;
+
+    private ReadingCsvImporter.Result importCsv(String csv, int commitSize) throws IOException {
+        var importer = new ReadingCsvImporter(batch -> batches.add(batch), commitSize);
+        return importer.importReadings(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), meter, (rows, bytes, rowsPerSecond) -> {
+            progress.add(rows);
+            lastBytes = bytes;
+            return true;
+        });
+    }
+
+    private List<Reading> imported() {
+        return batches.stream().flatMap(List::stream).toList();
+    }
+
+    @Test
+    void skipsAndReportsAHeaderThatDoesNotParse() throws IOException {
+        var result = importCsv("Datum;Zählerstand\n2024-01-01;100\n2024-01-02 06:30;112\n", 10);
+
+        assertEquals("Datum;Zählerstand", result.skippedHeader());
+        assertEquals(2, result.rows());
+        assertEquals(List.of(LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 1, 2, 6, 30)),
+                imported().stream().map(Reading::getReadingDate).toList());
+        assertEquals(List.of(100L, 112L), imported().stream().map(Reading::getReadingValue).toList());
+        assertTrue(imported().stream().allMatch(reading -> reading.getElectricityMeter() == meter));
+    }
+
+    @Test
+    void importsAFirstRowThatParses() throws IOException {
+        var result = importCsv("2024-01-01,100\n2024-01-02,112\n", 10);
+
+        assertNull(result.skippedHeader());
+        assertEquals(2, result.rows());
+    }
+
+    // the header is the first row with content, not the first line of the file
+    @Test
+    void skipsCommentsAndBlankLinesBeforeTheHeader() throws IOException {
+        var result = importCsv("# exported by hand\n\ndate value\n2024-01-01;100\n", 10);
+
+        assertEquals("date value", result.skippedHeader());
+        assertEquals(1, result.rows());
+    }
+
+    @Test
+    void failsOnAMalformedRowWithItsLineNumber() {
+        var error = assertThrows(IOException.class, () -> importCsv("date;value\n2024-01-01;100\n2024-01-02;lots\n", 10));
+
+        assertTrue(error.getMessage().startsWith("line 3:"), error.getMessage());
+    }
+
+    @Test
+    void failsOnARowWithoutSeparator() {
+        var error = assertThrows(IOException.class, () -> importCsv("2024-01-01;100\n2024-01-02 112\n", 10));
+
+        assertTrue(error.getMessage().startsWith("line 2:"), error.getMessage());
+    }
+
+    // a second row that does not parse is an error even though the first one was a header
+    @Test
+    void skipsOnlyOneHeader() {
+        var error = assertThrows(IOException.class, () -> importCsv("date;value\nunit;kWh\n2024-01-01;100\n", 10));
+
+        assertTrue(error.getMessage().startsWith("line 2:"), error.getMessage());
+    }
+
+    @Test
+    void keepsTheBatchesCommittedBeforeAMalformedRow() {
+        assertThrows(IOException.class, () -> importCsv(rows(5) + "2030-01-01;oops\n", 2));
+
+        assertEquals(List.of(2, 2), batches.stream().map(List::size).toList());
+    }
+
+    @Test
+    void commitsInBatchesOfTheCommitSize() throws IOException {
+        var result = importCsv(rows(7), 3);
+
+        assertEquals(7, result.rows());
+        assertEquals(List.of(3, 3, 1), batches.stream().map(List::size).toList());
+        assertEquals(List.of(3L, 6L, 7L), progress);
+    }
+
+    @Test
+    void writesNoEmptyBatchWhenTheRowsFillTheLastOne() throws IOException {
+        var result = importCsv(rows(6), 3);
+
+        assertEquals(6, result.rows());
+        assertEquals(List.of(3, 3), batches.stream().map(List::size).toList());
+        assertEquals(List.of(3L, 6L, 6L), progress);
+    }
+
+    @Test
+    void handsEveryBatchOverAsItsOwnList() throws IOException {
+        importCsv(rows(4), 2);
+
+        assertEquals(2, batches.size());
+        assertTrue(batches.get(0) != batches.get(1));
+        assertEquals(LocalDateTime.of(2024, 1, 1, 0, 0), batches.get(0).get(0).getReadingDate());
+        assertEquals(LocalDateTime.of(2024, 1, 3, 0, 0), batches.get(1).get(0).getReadingDate());
+    }
+
+    @Test
+    void stopsWhenTheListenerSaysSo() throws IOException {
+        var importer = new ReadingCsvImporter(batch -> batches.add(batch), 2);
+        var result = importer.importReadings(new ByteArrayInputStream(rows(6).getBytes(StandardCharsets.UTF_8)), meter,
+                (rows, bytes, rowsPerSecond) -> false);
+
+        assertEquals(2, result.rows());
+        assertEquals(1, batches.size());
+    }
+
+    // CRLF line ends and umlauts take more bytes than chars
+    @Test
+    void countsTheBytesOfTheInput() throws IOException {
+        var csv = "Zählerstand;kWh\r\n2024-01-01;100\r\n2024-01-02;112\r\n";
+        importCsv(csv, 1);
+
+        assertEquals(csv.getBytes(StandardCharsets.UTF_8).length, lastBytes);
+    }
+
+    @Test
+    void importsNothingFromAnEmptyFile() throws IOException {
+        var result = importCsv("", 10);
+
+        assertEquals(0, result.rows());
+        assertNull(result.skippedHeader());
+        assertEquals(0, batches.size());
+    }
+
+    private static String rows(int count) {
+        var csv = new StringBuilder();
+        for (int i = 0; i < count; i++) csv.append(LocalDateTime.of(2024, 1, 1, 0, 0).plusDays(i).toLocalDate()).append(';').append(100 + i).append('\n');
+        return csv.toString();
+    }
+}
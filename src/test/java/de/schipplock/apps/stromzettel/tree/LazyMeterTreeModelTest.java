@@ -0,0 +1,453 @@
+/*
+ * Copyright 2023 Andreas Schipplock
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.schipplock.apps.stromzettel.tree;
+
+import de.schipplock.apps.stromzettel.dao.AsyncDAO;
+import de.schipplock.apps.stromzettel.dao.ReadingFilter;
+import de.schipplock.apps.stromzettel.model.ElectricityMeter;
+import de.schipplock.apps.stromzettel.model.Reading;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.*;
+import javax.swing.event.TreeExpansionEvent;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.TreePath;
+import java.lang.reflect.InvocationTargetException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static de.schipplock.apps.stromzettel.tree.LazyMeterTreeModel.PAGE_SIZE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// drives the model the way JTree does, without a tree on screen; pages are answered by hand from an in-memory history,
+// so every step in between can be looked at
+class LazyMeterTreeModelTest {
+
+    private final ElectricityMeter meter = new ElectricityMeter("house", 30);
+
+    // newest first, like the pages
+    private final List<Reading> history = new ArrayList<>();
+
+    private final Deque<PageRequest> requests = new ArrayDeque<>();
+
+    private final List<String> events = new ArrayList<>();
+
+    private final List<Throwable> errors = new ArrayList<>();
+
+    private AsyncDAO asyncDAO;
+
+    private LazyMeterTreeModel model;
+
+    private MeterTreeNode meterNode;
+
+    private record PageRequest(Reading after, int maxResults, ReadingFilter filter, CompletableFuture<List<Reading>> page) {
+    }
+
+    @BeforeEach
+    void createModel() throws Exception {
+        meter.setId(1L);
+        for (int i = 0; i < 250; i++) {
+            history.add(reading(1000L - i, 1000 - i, LocalDateTime.of(2024, 1, 1, 0, 0).minusDays(i)));
+        }
+        asyncDAO = new AsyncDAO(null, null, null, null) {
+            @Override
+            public CompletableFuture<List<Reading>> findPage(ElectricityMeter meter, Reading after, int maxResults, ReadingFilter filter) {
+                var request = new PageRequest(after, maxResults, filter, new CompletableFuture<>());
+                requests.add(request);
+                return request.page();
+            }
+        };
+        onEdt(() -> {
+            model = new LazyMeterTreeModel(new DefaultMutableTreeNode("root"), asyncDAO, "more", "loading", errors::add);
+            model.addMeters(List.of(meter));
+            meterNode = (MeterTreeNode) ((DefaultMutableTreeNode) model.getRoot()).getChildAt(0);
+            model.addTreeModelListener(new EventRecorder());
+        });
+    }
+
+    @AfterEach
+    void shutdown() {
+        asyncDAO.shutdown();
+    }
+
+    @Test
+    void expandingAMeterFetchesTheFirstPage() throws Exception {
+        history.subList(3, history.size()).clear();
+
+        onEdt(() -> model.treeWillExpand(expansion()));
+
+        assertTrue(meterNode.isLoaded());
+        assertInstanceOf(LoadingTreeNode.class, meterNode.getChildAt(0));
+        var request = requests.peek();
+        assertNull(request.after());
+        assertEquals(PAGE_SIZE + 1, request.maxResults());
+
+        answer();
+
+        assertEquals(history, loadedReadings());
+        assertNull(meterNode.getPlaceholderNode());
+        assertEquals(List.of("inserted [0]", "removed [0]", "inserted [0, 1, 2]"), events);
+    }
+
+    @Test
+    void expandingALoadedMeterFetchesNothing() throws Exception {
+        onEdt(() -> model.treeWillExpand(expansion()));
+        answer();
+        onEdt(() -> model.treeWillExpand(expansion()));
+
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    void pagesThroughTheHistoryWithAMoreNode() throws Exception {
+        onEdt(() -> model.treeWillExpand(expansion()));
+        answer();
+
+        assertEquals(history.subList(0, PAGE_SIZE), loadedReadings());
+        assertInstanceOf(MoreReadingsTreeNode.class, meterNode.getChildAt(PAGE_SIZE));
+
+        onEdt(() -> model.loadNextPage(meterNode));
+        // the "more" node makes way for the loading node
+        assertInstanceOf(LoadingTreeNode.class, meterNode.getChildAt(PAGE_SIZE));
+        assertSame(history.get(PAGE_SIZE - 1), requests.peek().after());
+        answer();
+
+        assertEquals(history.subList(0, 2 * PAGE_SIZE), loadedReadings());
+        assertInstanceOf(MoreReadingsTreeNode.class, meterNode.getLastChild());
+
+        onEdt(() -> model.loadNextPage(meterNode));
+        answer();
+
+        assertEquals(history, loadedReadings());
+        assertNull(meterNode.getPlaceholderNode());
+    }
+
+    @Test
+    void asksForOnePageAtATime() throws Exception {
+        onEdt(() -> {
+            model.loadNextPage(meterNode);
+            model.loadNextPage(meterNode);
+        });
+
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    void aFailedFirstPageLetsTheNextExpansionTryAgain() throws Exception {
+        onEdt(() -> model.treeWillExpand(expansion()));
+        var failure = new IllegalStateException("database gone");
+        requests.poll().page().completeExceptionally(failure);
+        onEdt(() -> {});
+
+        assertFalse(meterNode.isLoaded());
+        assertEquals(0, meterNode.getChildCount());
+        assertEquals(List.of(failure), errors);
+
+        onEdt(() -> model.treeWillExpand(expansion()));
+        answer();
+
+        assertEquals(PAGE_SIZE, loadedReadings().size());
+    }
+
+    @Test
+    void aFailedLaterPageGetsItsMoreNodeBack() throws Exception {
+        onEdt(() -> model.loadNextPage(meterNode));
+        answer();
+        onEdt(() -> model.loadNextPage(meterNode));
+        requests.poll().page().completeExceptionally(new IllegalStateException("database gone"));
+        onEdt(() -> {});
+
+        assertEquals(PAGE_SIZE, loadedReadings().size());
+        assertInstanceOf(MoreReadingsTreeNode.class, meterNode.getLastChild());
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    void insertsANewReadingWhereItsDateBelongs() throws Exception {
+        history.subList(3, history.size()).clear();
+        onEdt(() -> model.loadNextPage(meterNode));
+        answer();
+        events.clear();
+
+        var newest = reading(2000L, 2000, history.get(0).getReadingDate().plusDays(1));
+        var between = reading(2001L, 999, history.get(1).getReadingDate().plusHours(1));
+        onEdt(() -> {
+            assertEquals(newest, model.insertReading(meterNode, newest).getUserObject());
+            assertEquals(between, model.insertReading(meterNode, between).getUserObject());
+        });
+
+        assertEquals(List.of(newest, history.get(0), between, history.get(1), history.get(2)), loadedReadings());
+        assertEquals(List.of("inserted [0]", "inserted [2]"), events);
+    }
+
+    @Test
+    void leavesAReadingForAPageThatIsNotLoadedYet() throws Exception {
+        onEdt(() -> model.loadNextPage(meterNode));
+        answer();
+        events.clear();
+
+        var older = reading(2000L, 1, history.get(history.size() - 1).getReadingDate().minusDays(1));
+        onEdt(() -> assertNull(model.insertReading(meterNode, older)));
+
+        assertEquals(PAGE_SIZE, loadedReadings().size());
+        assertEquals(List.of(), events);
+    }
+
+    @Test
+    void leavesAReadingOutOfACollapsedMeterAndOutOfTheFilter() throws Exception {
+        var reading = reading(2000L, 2000, LocalDateTime.of(2025, 1, 1, 0, 0));
+        onEdt(() -> assertNull(model.insertReading(meterNode, reading)));
+
+        onEdt(() -> {
+            model.setFilter("", new ReadingFilter(null, LocalDateTime.of(2024, 6, 1, 0, 0), null, null));
+            model.loadNextPage(meterNode);
+        });
+        answer();
+        events.clear();
+        onEdt(() -> assertNull(model.insertReading(meterNode, reading)));
+
+        assertEquals(List.of(), events);
+    }
+
+    @Test
+    void movesAnEditedReadingAndRemovesItOnceTheFilterHidesIt() throws Exception {
+        history.subList(3, history.size()).clear();
+        onEdt(() -> {
+            model.setFilter("", new ReadingFilter(null, null, 0L, 5000L));
+            model.loadNextPage(meterNode);
+        });
+        answer();
+        events.clear();
+
+        var edited = history.get(2);
+        var previousDate = edited.getReadingDate();
+        onEdt(() -> {
+            var node = (DefaultMutableTreeNode) meterNode.getChildAt(2);
+            edited.setReadingDate(previousDate.plusDays(5));
+            model.readingChanged(node, previousDate);
+        });
+        assertEquals(List.of(edited, history.get(0), history.get(1)), loadedReadings());
+
+        onEdt(() -> {
+            var node = (DefaultMutableTreeNode) meterNode.getChildAt(0);
+            edited.setReadingValue(6000L);
+            model.readingChanged(node, edited.getReadingDate());
+        });
+        assertEquals(List.of(history.get(0), history.get(1)), loadedReadings());
+        assertEquals(List.of("removed [2]", "inserted [0]", "removed [0]"), events);
+    }
+
+    @Test
+    void collapsingAMeterUnloadsItsReadings() throws Exception {
+        onEdt(() -> model.treeWillExpand(expansion()));
+        answer();
+        events.clear();
+
+        onEdt(() -> model.treeCollapsed(expansion()));
+
+        assertFalse(meterNode.isLoaded());
+        assertEquals(0, meterNode.getChildCount());
+        assertEquals(1, events.size());
+        assertTrue(events.get(0).startsWith("removed [0, 1, 2, "), events.get(0));
+        assertTrue(events.get(0).endsWith(", " + PAGE_SIZE + "]"), events.get(0));
+    }
+
+    @Test
+    void dropsAPageThatArrivesAfterTheMeterWasCollapsed() throws Exception {
+        onEdt(() -> model.treeWillExpand(expansion()));
+        onEdt(() -> model.treeCollapsed(expansion()));
+        events.clear();
+
+        answer();
+
+        assertEquals(0, meterNode.getChildCount());
+        assertEquals(List.of(), events);
+
+        onEdt(() -> model.treeWillExpand(expansion()));
+        answer();
+
+        assertEquals(history.subList(0, PAGE_SIZE), loadedReadings());
+    }
+
+    @Test
+    void narrowingTheDatesDropsTheNewestAndTheOldestLoadedReadings() throws Exception {
+        history.subList(50, history.size()).clear();
+        onEdt(() -> model.loadNextPage(meterNode));
+        answer();
+        events.clear();
+
+        var filter = new ReadingFilter(history.get(40).getReadingDate(), history.get(10).getReadingDate(), null, null);
+        onEdt(() -> model.setFilter("", filter));
+
+        assertEquals(history.subList(11, 41), loadedReadings());
+        assertTrue(requests.isEmpty());
+        assertEquals(1, events.size());
+        assertTrue(events.get(0).startsWith("removed [0, 1, 2, "), events.get(0));
+        assertTrue(events.get(0).contains(" 9, 10, 41, 42, "), events.get(0));
+    }
+
+    @Test
+    void narrowingTheValuesDropsTheReadingsOutsideThem() throws Exception {
+        history.subList(50, history.size()).clear();
+        onEdt(() -> {
+            model.setFilter("", new ReadingFilter(null, history.get(5).getReadingDate(), null, null));
+            model.loadNextPage(meterNode);
+        });
+        answer();
+
+        var filter = new ReadingFilter(null, history.get(5).getReadingDate(), 970L, 990L);
+        onEdt(() -> model.setFilter("", filter));
+
+        assertEquals(history.stream().filter(filter::matches).toList(), loadedReadings());
+        assertEquals(21, loadedReadings().size());
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    void narrowingBelowAPageFetchesTheNextOneAfterWhatIsLeft() throws Exception {
+        onEdt(() -> model.loadNextPage(meterNode));
+        answer();
+
+        var filter = new ReadingFilter(null, history.get(60).getReadingDate(), null, null);
+        onEdt(() -> model.setFilter("", filter));
+
+        assertEquals(history.subList(61, PAGE_SIZE), loadedReadings());
+        assertSame(history.get(PAGE_SIZE - 1), requests.peek().after());
+        assertEquals(filter, requests.peek().filter());
+        answer();
+
+        assertEquals(history.subList(61, 2 * PAGE_SIZE), loadedReadings());
+        assertInstanceOf(MoreReadingsTreeNode.class, meterNode.getLastChild());
+    }
+
+    @Test
+    void wideningTheFilterFetchesTheFirstPageAgain() throws Exception {
+        var filter = new ReadingFilter(history.get(80).getReadingDate(), null, null, null);
+        onEdt(() -> {
+            model.setFilter("", filter);
+            model.loadNextPage(meterNode);
+        });
+        answer();
+
+        onEdt(() -> model.setFilter("", ReadingFilter.NONE));
+
+        assertInstanceOf(LoadingTreeNode.class, meterNode.getChildAt(0));
+        assertNull(requests.peek().after());
+        answer();
+
+        assertEquals(history.subList(0, PAGE_SIZE), loadedReadings());
+    }
+
+    @Test
+    void removesAndRestoresAMeter() throws Exception {
+        var garage = new ElectricityMeter("garage", 40);
+        var garageNode = new MeterTreeNode[1];
+        onEdt(() -> garageNode[0] = model.addMeter(garage));
+        assertEquals(List.of("root inserted [1]"), events);
+        events.clear();
+
+        onEdt(() -> {
+            int index = model.removeMeter(meterNode);
+            assertEquals(0, index);
+            model.restoreMeter(meterNode, index);
+        });
+
+        var root = (DefaultMutableTreeNode) model.getRoot();
+        assertSame(meterNode, root.getChildAt(0));
+        assertSame(garageNode[0], root.getChildAt(1));
+        assertEquals(List.of("root removed [0]", "root inserted [0]"), events);
+    }
+
+    // answers the oldest open page request from the history and lets the model take the page in
+    private void answer() throws Exception {
+        var request = requests.poll();
+        var page = history.stream()
+                .filter(reading -> request.after() == null || Reading.BY_DATE.compare(reading, request.after()) < 0)
+                .filter(request.filter()::matches)
+                .limit(request.maxResults())
+                .toList();
+        request.page().complete(new ArrayList<>(page));
+        onEdt(() -> {});
+    }
+
+    private List<Reading> loadedReadings() {
+        List<Reading> readings = new ArrayList<>();
+        for (int i = 0; i < meterNode.getChildCount(); i++) {
+            if (((DefaultMutableTreeNode) meterNode.getChildAt(i)).getUserObject() instanceof Reading reading) {
+                readings.add(reading);
+            }
+        }
+        return readings;
+    }
+
+    private TreeExpansionEvent expansion() {
+        return new TreeExpansionEvent(model, new TreePath(meterNode.getPath()));
+    }
+
+    private Reading reading(long id, long value, LocalDateTime date) {
+        var reading = new Reading(value, date);
+        reading.setId(id);
+        reading.setElectricityMeter(meter);
+        return reading;
+    }
+
+    // pages arrive through invokeLater, so the model is only touched on the event dispatch thread
+    private static void onEdt(Runnable runnable) throws InterruptedException, InvocationTargetException {
+        SwingUtilities.invokeAndWait(runnable);
+    }
+
+    private class EventRecorder implements TreeModelListener {
+
+        @Override
+        public void treeNodesChanged(TreeModelEvent event) {
+            record("changed", event);
+        }
+
+        @Override
+        public void treeNodesInserted(TreeModelEvent event) {
+            record("inserted", event);
+        }
+
+        @Override
+        public void treeNodesRemoved(TreeModelEvent event) {
+            record("removed", event);
+        }
+
+        @Override
+        public void treeStructureChanged(TreeModelEvent event) {
+            record("structure", event);
+        }
+
+        private void record(String type, TreeModelEvent event) {
+            var parent = event.getTreePath().getLastPathComponent() == model.getRoot() ? "root " : "";
+            events.add(parent + type + " " + Arrays.toString(event.getChildIndices()));
+        }
+    }
+}